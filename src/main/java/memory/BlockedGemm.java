@@ -0,0 +1,82 @@
+package memory;
+
+/**
+ * Cache-blocked matrix multiplication kernel working directly on raw arrays.
+ * The right operand is copied panel by panel into one contiguous KC x NC buffer
+ * (256 KB, so it fits in L2) which is then reused by every row of C, and the inner
+ * loop updates four rows of C at once so every loaded element of B is used four times.
+ */
+final class BlockedGemm {
+
+    static final int KC = 128; // depth of a panel (rows of B)
+    static final int NC = 256; // width of a panel (columns of B and C)
+    static final int MR = 4;   // rows of C updated together by the inner loop
+
+    private BlockedGemm() {
+    }
+
+    /**
+     * Computes c += a * b.
+     * a is an m x k row-major array, c holds m rows of length n and
+     * row p of b starts at b[p][bOff[p]] with its elements stored contiguously.
+     * Every row of c is its own array so it can later be handed out without a copy.
+     */
+    static void multiply(double[] a, int m, int k, double[][] b, int[] bOff, int n, double[][] c) {
+        multiply(a, m, k, b, bOff, n, c, 0);
+    }
+
+    /**
+     * Same as above, but the n result columns start at c[i][cOff], so a tile of a wider
+     * product can be accumulated in place.
+     */
+    static void multiply(double[] a, int m, int k, double[][] b, int[] bOff, int n, double[][] c, int cOff) {
+        if (m == 0 || k == 0 || n == 0) {
+            return;
+        }
+        double[] panel = new double[Math.min(KC, k) * Math.min(NC, n)];
+        for (int kk = 0; kk < k; kk += KC) {
+            int kEnd = Math.min(kk + KC, k);
+            for (int jj = 0; jj < n; jj += NC) {
+                int width = Math.min(jj + NC, n) - jj;
+                pack(b, bOff, kk, kEnd, jj, width, panel);
+                int i = 0;
+                for (; i + MR <= m; i += MR) {
+                    kernel4(a, k, panel, width, c, cOff + jj, i, kk, kEnd);
+                }
+                for (; i < m; i++) {
+                    kernel1(a, k, panel, width, c, cOff + jj, i, kk, kEnd);
+                }
+            }
+        }
+    }
+
+    //copies rows kk..kEnd, columns jj..jj+width of b into panel, one row after the other
+    private static void pack(double[][] b, int[] bOff, int kk, int kEnd, int jj, int width, double[] panel) {
+        for (int p = kk; p < kEnd; p++) {
+            System.arraycopy(b[p], bOff[p] + jj, panel, (p - kk) * width, width);
+        }
+    }
+
+    private static void kernel4(double[] a, int k, double[] panel, int width, double[][] c, int cOff,
+                                int i, int kk, int kEnd) {
+        int a0 = i * k;
+        int a1 = a0 + k;
+        int a2 = a1 + k;
+        int a3 = a2 + k;
+        for (int p = kk; p < kEnd; p++) {
+            double x0 = a[a0 + p];
+            double x1 = a[a1 + p];
+            double x2 = a[a2 + p];
+            double x3 = a[a3 + p];
+            VectorKernels.axpy4(x0, x1, x2, x3, panel, (p - kk) * width, c[i], c[i + 1], c[i + 2], c[i + 3], cOff, width);
+        }
+    }
+
+    private static void kernel1(double[] a, int k, double[] panel, int width, double[][] c, int cOff,
+                                int i, int kk, int kEnd) {
+        int a0 = i * k;
+        for (int p = kk; p < kEnd; p++) {
+            VectorKernels.axpy(a[a0 + p], panel, (p - kk) * width, 1, c[i], cOff, width);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package memory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recycles row-major double[][] buffers by shape.
+ * Only buffers that this pool handed out are taken back; anything else passed to release, such as
+ * the caller's leaf matrices, is ignored and never handed out again. The pool does not keep anyone
+ * from writing into such arrays, that is up to its user (the engine copies a leaf into a buffer from
+ * here before an operation would overwrite it). Released buffers are kept up to maxBytes in total;
+ * beyond that they are left to the garbage collector.
+ * Thread safe, all methods synchronize on the pool.
+ */
+public class BufferPool {
+
+    private final long maxBytes;
+    private final Map<Long, Deque<double[][]>> free = new HashMap<>();
+    //first row of every buffer handed out and not released yet, identifies the buffer
+    private final Set<double[]> issued = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long pooledBytes = 0;
+    private long reused = 0;
+    private long allocated = 0;
+
+    /** @param maxBytes upper bound on the bytes kept for reuse, 0 keeps nothing */
+    public BufferPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A rows x cols buffer whose contents are unspecified, the caller overwrites every element.
+     */
+    public synchronized double[][] acquire(int rows, int cols) {
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("Invalid buffer shape");
+        }
+        if (rows == 0) {
+            return new double[0][0];
+        }
+        Deque<double[][]> bucket = free.get(key(rows, cols));
+        double[][] buffer = bucket == null ? null : bucket.poll();
+        if (buffer != null) {
+            pooledBytes -= bytes(rows, cols);
+            reused++;
+        }
+        else {
+            buffer = new double[rows][cols];
+            allocated++;
+        }
+        issued.add(buffer[0]);
+        return buffer;
+    }
+
+    /** Like acquire, but every element is zero. */
+    public double[][] acquireZeroed(int rows, int cols) {
+        double[][] buffer;
+        boolean recycled;
+        synchronized (this) {
+            long before = reused;
+            buffer = acquire(rows, cols);
+            recycled = reused != before;
+        }
+        //a new array is zero already, only a recycled one is cleared, outside the lock
+        if (recycled) {
+            for (double[] row : buffer) {
+                Arrays.fill(row, 0.0);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Takes back a buffer that is no longer read or written by anyone. Buffers this pool did not
+     * hand out, or that do not fit under maxBytes, are ignored.
+     */
+    public synchronized void release(double[][] buffer) {
+        if (buffer == null || buffer.length == 0 || !issued.remove(buffer[0])) {
+            return;
+        }
+        int cols = buffer[0].length;
+        for (double[] row : buffer) {
+            if (row.length != cols) {
+                return;
+            }
+        }
+        long size = bytes(buffer.length, cols);
+        if (pooledBytes + size > maxBytes) {
+            return;
+        }
+        free.computeIfAbsent(key(buffer.length, cols), k -> new ArrayDeque<>()).push(buffer);
+        pooledBytes += size;
+    }
+
+    /**
+     * Takes charge of a buffer allocated elsewhere that nobody else references, as if this pool had
+     * handed it out: it counts as owned and goes back to the free buffers once released.
+     */
+    public synchronized void adopt(double[][] buffer) {
+        if (buffer != null && buffer.length > 0) {
+            issued.add(buffer[0]);
+        }
+    }
+
+    /** Whether buffer was handed out by this pool and not released since. */
+    public synchronized boolean owns(double[][] buffer) {
+        return buffer != null && buffer.length > 0 && issued.contains(buffer[0]);
+    }
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+
+    public synchronized long getAllocatedCount() {
+        return allocated;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    private static long key(int rows, int cols) {
+        return ((long) rows << 32) | (cols & 0xffffffffL);
+    }
+
+    private static long bytes(int rows, int cols) {
+        return (long) rows * cols * Double.BYTES;
+    }
+}
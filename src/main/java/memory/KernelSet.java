@@ -0,0 +1,29 @@
+package memory;
+
+/**
+ * One implementation of the raw-array loops used by VectorKernels and BlockedGemm.
+ * Implementations take no locks, see VectorKernels for the calling contract.
+ */
+interface KernelSet {
+
+    // dst += src
+    void add(double[] dst, int dOff, int dStride, double[] src, int sOff, int sStride, int n);
+
+    // x = -x
+    void negate(double[] x, int off, int stride, int n);
+
+    double dot(double[] x, int xOff, int xStride, double[] y, int yOff, int yStride, int n);
+
+    // y += a * x, y is always contiguous
+    void axpy(double a, double[] x, int xOff, int xStride, double[] y, int yOff, int n);
+
+    /**
+     * Rank-1 update of four rows of c with one contiguous row of b:
+     * cR[cOff + j] += xR * b[bOff + j] for R = 0..3 and j in [0, n).
+     * This is the inner loop of the blocked multiplication.
+     */
+    void axpy4(double x0, double x1, double x2, double x3, double[] b, int bOff,
+               double[] c0, double[] c1, double[] c2, double[] c3, int cOff, int n);
+
+    String name();
+}
@@ -0,0 +1,20 @@
+package memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the ids that SharedVector and SharedMatrix use to decide which lock is taken first.
+ * Ids come from one counter, so they are unique across both classes and never collide,
+ * unlike identity hash codes.
+ */
+final class LockOrder {
+
+    private static final AtomicLong NEXT = new AtomicLong();
+
+    private LockOrder() {
+    }
+
+    static long next() {
+        return NEXT.getAndIncrement();
+    }
+}
@@ -0,0 +1,79 @@
+package memory;
+
+/**
+ * Plain loops, always available. Unit-stride inputs get a separate loop so the JIT
+ * can unroll and auto-vectorize it.
+ */
+final class ScalarKernels implements KernelSet {
+
+    @Override
+    public void add(double[] dst, int dOff, int dStride, double[] src, int sOff, int sStride, int n) {
+        if (dStride == 1 && sStride == 1) {
+            for (int i = 0; i < n; i++) {
+                dst[dOff + i] += src[sOff + i];
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            dst[dOff + i * dStride] += src[sOff + i * sStride];
+        }
+    }
+
+    @Override
+    public void negate(double[] x, int off, int stride, int n) {
+        if (stride == 1) {
+            for (int i = 0; i < n; i++) {
+                x[off + i] = -x[off + i];
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            x[off + i * stride] = -x[off + i * stride];
+        }
+    }
+
+    @Override
+    public double dot(double[] x, int xOff, int xStride, double[] y, int yOff, int yStride, int n) {
+        double sum = 0.0;
+        if (xStride == 1 && yStride == 1) {
+            for (int i = 0; i < n; i++) {
+                sum += x[xOff + i] * y[yOff + i];
+            }
+            return sum;
+        }
+        for (int i = 0; i < n; i++) {
+            sum += x[xOff + i * xStride] * y[yOff + i * yStride];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double a, double[] x, int xOff, int xStride, double[] y, int yOff, int n) {
+        if (xStride == 1) {
+            for (int i = 0; i < n; i++) {
+                y[yOff + i] += a * x[xOff + i];
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] += a * x[xOff + i * xStride];
+        }
+    }
+
+    @Override
+    public void axpy4(double x0, double x1, double x2, double x3, double[] b, int bOff,
+                      double[] c0, double[] c1, double[] c2, double[] c3, int cOff, int n) {
+        for (int j = 0; j < n; j++) {
+            double y = b[bOff + j];
+            c0[cOff + j] += x0 * y;
+            c1[cOff + j] += x1 * y;
+            c2[cOff + j] += x2 * y;
+            c3[cOff + j] += x3 * y;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -1,8 +1,11 @@
 package memory;
 
+import java.util.Arrays;
+
 public class SharedMatrix {
 
     private volatile SharedVector[] vectors = {}; // underlying vectors
+    private final long lockOrder = LockOrder.next(); // shares the id sequence with SharedVector
 
     public SharedMatrix() {
         // TODO: initialize empty matrix
@@ -22,17 +25,9 @@ public class SharedMatrix {
         }
 
         //checking the array is rectangular
-        int numCols = matrix[0].length;
-        for (int i = 1; i < matrix.length; i++) {
-            if (matrix[i].length != numCols) {
-                throw new IllegalArgumentException("Input matrix must be rectangular.");
-            }
-        }
-        //initialize vectors
-        this.vectors = new SharedVector[matrix.length];
-        for (int i = 0; i < matrix.length; i++) {
-            this.vectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
-        }
+        checkRectangular(matrix);
+        //initialize vectors as views into one contiguous array
+        this.vectors = packRowMajor(matrix);
     }
 
     //no need for locks since we are creating and replacing the entire matrix
@@ -44,21 +39,90 @@ public class SharedMatrix {
         if(matrix.length == 0){
             return;
         }
+        checkRectangular(matrix);
 
         SharedVector[] oldVectors = this.vectors;
         acquireAllVectorWriteLocks(oldVectors);
         try {
-            SharedVector[] newVectors = new SharedVector[matrix.length];
-            for (int i = 0; i < matrix.length; i++){
-                newVectors[i] = new SharedVector(matrix[i].clone(), VectorOrientation.ROW_MAJOR);
+            this.vectors = packRowMajor(matrix);
+        } 
+        finally {
+            releaseAllVectorWriteLocks(oldVectors);
+        }
+    }
+
+    /**
+     * Loads a row-major matrix by taking ownership of its row arrays instead of copying them.
+     * The caller must not use the arrays afterwards: operations on this matrix write into them.
+     * Unlike loadRowMajor the rows are not packed into one contiguous array: packing is a full copy
+     * on the way in and detachStorage would need another one on the way out, which is the cost this
+     * hand-off exists to avoid. The row-by-row kernels (element-wise tasks, the left side of a
+     * product) only ever stream one row at a time, so they lose nothing; the right side of a product,
+     * which every tile walks across its vectors, is packed through loadRowMajor instead.
+     */
+    public void adoptRowMajor(double[][] matrix) {
+        if (matrix == null) {
+            throw new IllegalArgumentException("Input matrix cannot be null.");
         }
+        if (matrix.length == 0) {
+            this.vectors = new SharedVector[0];
+            return;
+        }
+        checkRectangular(matrix);
+        SharedVector[] oldVectors = this.vectors;
+        acquireAllVectorWriteLocks(oldVectors);
+        try {
+            SharedVector[] newVectors = new SharedVector[matrix.length];
+            for (int i = 0; i < matrix.length; i++) {
+                newVectors[i] = new SharedVector(matrix[i], VectorOrientation.ROW_MAJOR);
+            }
             this.vectors = newVectors;
-        } 
+        }
         finally {
             releaseAllVectorWriteLocks(oldVectors);
         }
     }
 
+    /**
+     * Hands the stored vectors out, one array per vector, and leaves this matrix empty.
+     * Vectors that already own a whole array (adopted rows, multiplication results) are given
+     * away without copying; vectors that are views into a shared array are copied out.
+     * Like readStorage, a column-major matrix comes out as its columns.
+     */
+    public double[][] detachStorage() {
+        SharedVector[] snap = this.vectors;
+        if (snap.length == 0) {
+            return new double[0][0];
+        }
+        acquireAllVectorWriteLocks(snap);
+        try {
+            double[][] result = new double[snap.length][];
+            for (int i = 0; i < snap.length; i++) {
+                SharedVector v = snap[i];
+                if (v.offset() == 0 && v.stride() == 1 && v.size() == v.data().length) {
+                    result[i] = v.data();
+                }
+                else {
+                    result[i] = new double[v.size()];
+                    VectorKernels.gather(v.data(), v.offset(), v.stride(), result[i], 0, v.size());
+                }
+            }
+            this.vectors = new SharedVector[0];
+            return result;
+        }
+        finally {
+            releaseAllVectorWriteLocks(snap);
+        }
+    }
+
+    /**
+     * Drops the stored vectors without reading them and leaves this matrix empty, for a matrix
+     * whose contents are no longer needed. Unlike detachStorage nothing is copied out.
+     */
+    public void release() {
+        this.vectors = new SharedVector[0];
+    }
+
     public void loadColumnMajor(double[][] matrix) {
        if (matrix == null) {
         throw new IllegalArgumentException("Input matrix cannot be null.");
@@ -68,32 +132,56 @@ public class SharedMatrix {
         return;
     }
     // Check rectangularity and mull rows
+    checkRectangular(matrix);
     int rows = matrix.length;
     int cols = matrix[0].length;
+
+     //create new matrix as column-major vectors, column j occupies data[j*rows .. (j+1)*rows)
+    double[] data = new double[rows * cols];
     for (int i = 0; i < rows; i++) {
-        if (matrix[i] == null) {
-             throw new IllegalArgumentException("Matrix row cannot be null.");
-        }
-        if (matrix[i].length != cols) {
-            throw new IllegalArgumentException("Input matrix must be rectangular.");
+        double[] row = matrix[i];
+        for (int j = 0; j < cols; j++) {
+            data[j * rows + i] = row[j];
         }
     }
-
-     //create new matrix as column-major vectors
     SharedVector[] newVectors = new SharedVector[cols];
     for (int j = 0; j < cols; j++) {
-        double[] colData = new double[rows];//hodling the verticle numbers
-        //interate through the rown in col
-        for (int i = 0; i < rows; i++) {
-            colData[i] = matrix[i][j];
-        }
         // Create the vector with COLUMN orientation
-        newVectors[j] = new SharedVector(colData, VectorOrientation.COLUMN_MAJOR);
+        newVectors[j] = new SharedVector(data, j * rows, rows, 1, VectorOrientation.COLUMN_MAJOR);
     }
     //SWAP
     this.vectors = newVectors;
 }
 
+    //copies the rows into a single row-major array and returns one view per row
+    private static SharedVector[] packRowMajor(double[][] matrix) {
+        int rows = matrix.length;
+        int cols = matrix[0].length;
+        double[] data = new double[rows * cols];
+        SharedVector[] newVectors = new SharedVector[rows];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(matrix[i], 0, data, i * cols, cols);
+            newVectors[i] = new SharedVector(data, i * cols, cols, 1, VectorOrientation.ROW_MAJOR);
+        }
+        return newVectors;
+    }
+
+    private static void checkRectangular(double[][] matrix) {
+        int cols = matrix[0] == null ? -1 : matrix[0].length;
+        for (int i = 0; i < matrix.length; i++) {
+            if (matrix[i] == null) {
+                throw new IllegalArgumentException("Matrix row cannot be null.");
+            }
+            if (matrix[i].length != cols) {
+                throw new IllegalArgumentException("Input matrix must be rectangular.");
+            }
+        }
+        //the whole matrix has to fit into one array
+        if ((long) matrix.length * cols > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Input matrix is too large for contiguous storage.");
+        }
+    }
+
     //this method returns the matrix as vectors of rows
     public double[][] readRowMajor() {
     //making a current copy a "snapshot"
@@ -103,12 +191,26 @@ public class SharedMatrix {
             return new double[0][0];
         }
 
+        //first try without touching the locks at all
+        double[][] optimistic = readOptimistic(currMatrix, SharedMatrix::copyRowMajor);
+        if (optimistic != null) {
+            return optimistic;
+        }
+
         // lock the matrix for reading
         acquireAllVectorReadLocks(currMatrix);
     
         try {
+            return copyRowMajor(currMatrix);
+        } finally {
+        releaseAllVectorReadLocks(currMatrix); //unlock
+         }
+    }
+
+    //the vectors are either read locked or read optimistically by the caller
+    private static double[][] copyRowMajor(SharedVector[] currMatrix) {
             //checking oriantion of vectors in matrix
-            VectorOrientation orientation = currMatrix[0].getOrientation();
+            VectorOrientation orientation = currMatrix[0].orientation();
         
             int rows;
             int cols;
@@ -118,13 +220,12 @@ public class SharedMatrix {
             //if the matrix is already in rows
             if (orientation == VectorOrientation.ROW_MAJOR) {
                 rows = currMatrix.length;
-                cols = currMatrix[0].length();
+                cols = currMatrix[0].size();
                 result = new double[rows][cols];
-                //direct coping
+                //direct coping, one bulk copy per row
                 for (int i = 0; i < rows; i++) {
-                    for (int j = 0; j < cols; j++) {
-                        result[i][j] = currMatrix[i].get(j);
-                    }
+                    SharedVector row = currMatrix[i];
+                    VectorKernels.gather(row.data(), row.offset(), row.stride(), result[i], 0, cols);
                 }
             }
 
@@ -132,19 +233,452 @@ public class SharedMatrix {
             //the matrix is in columns
             else {
                 cols = currMatrix.length; 
-                rows = currMatrix[0].length(); // The length of one vector is the number of Rows
+                rows = currMatrix[0].size(); // The length of one vector is the number of Rows
                 result = new double[rows][cols];
 
-                for (int i = 0; i < rows; i++) {
-                    for (int j = 0; j < cols; j++) {
-                        result[i][j] = currMatrix[j].get(i); //transpose
+                for (int j = 0; j < cols; j++) {
+                    SharedVector col = currMatrix[j];
+                    double[] data = col.data();
+                    int pos = col.offset();
+                    int stride = col.stride();
+                    for (int i = 0; i < rows; i++, pos += stride) {
+                        result[i][j] = data[pos]; //transpose
                     }
                 }
             }
             return result;
-        } finally {
-        releaseAllVectorReadLocks(currMatrix); //unlock
-         }
+    }
+
+    /**
+     * Runs a bulk copy without taking any lock: every vector is stamped first, the copy runs,
+     * and the result is only used if no writer touched any of the vectors in the meantime.
+     * Returns null when the caller has to retry under read locks.
+     */
+    private static double[][] readOptimistic(SharedVector[] vecs, java.util.function.Function<SharedVector[], double[][]> copy) {
+        long[] stamps = new long[vecs.length];
+        for (int i = 0; i < vecs.length; i++) {
+            stamps[i] = vecs[i].tryOptimisticRead();
+            if (stamps[i] == 0) {
+                return null; //a writer holds the lock right now
+            }
+        }
+        try {
+            double[][] result = copy.apply(vecs);
+            return allValid(vecs, stamps) ? result : null;
+        }
+        catch (RuntimeException e) {
+            //a torn read can fail in odd ways, it only counts if the reads were consistent
+            if (!allValid(vecs, stamps)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean allValid(SharedVector[] vecs, long[] stamps) {
+        for (int i = 0; i < vecs.length; i++) {
+            if (!vecs[i].validate(stamps[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Transposes the matrix by flipping the orientation of every stored vector.
+     * No element is moved: the rows of a row-major matrix become the columns of a column-major one.
+     */
+    public void transpose() {
+        SharedVector[] snap = this.vectors;
+        acquireAllVectorWriteLocks(snap);
+        try {
+            for (SharedVector v : snap) {
+                v.flipOrientation();
+            }
+        }
+        finally {
+            releaseAllVectorWriteLocks(snap);
+        }
+    }
+
+    /**
+     * Copies the stored vectors out as they are, one array per vector, without transposing.
+     * For a column-major matrix this is the transpose of readRowMajor, which lets a caller
+     * keep the data in its current layout and remember the orientation separately.
+     */
+    public double[][] readStorage() {
+        SharedVector[] snap = this.vectors;
+        if (snap.length == 0) {
+            return new double[0][0];
+        }
+        double[][] optimistic = readOptimistic(snap, SharedMatrix::copyStorage);
+        if (optimistic != null) {
+            return optimistic;
+        }
+        acquireAllVectorReadLocks(snap);
+        try {
+            return copyStorage(snap);
+        }
+        finally {
+            releaseAllVectorReadLocks(snap);
+        }
+    }
+
+    private static double[][] copyStorage(SharedVector[] snap) {
+        double[][] result = new double[snap.length][];
+        for (int i = 0; i < snap.length; i++) {
+            SharedVector v = snap[i];
+            result[i] = new double[v.size()];
+            VectorKernels.gather(v.data(), v.offset(), v.stride(), result[i], 0, v.size());
+        }
+        return result;
+    }
+
+    /**
+     * Adds the tile [fromRow, toRow) x [fromCol, toCol) of this * right, summed over the inner
+     * indices [fromK, toK), into out, which is indexed like the full product.
+     * Both matrices are only read, so tiles run concurrently as long as they write disjoint
+     * parts of out (or separate buffers that are reduced afterwards).
+     */
+    public void multiplyTile(int fromRow, int toRow, int fromCol, int toCol, int fromK, int toK,
+                             SharedMatrix right, double[][] out) {
+        multiplyTile(fromRow, toRow, fromCol, toCol, fromK, toK, right, out, 1.0);
+    }
+
+    /**
+     * Same as above for alpha * (this * right); the scalar is applied to the packed left slice,
+     * so it costs nothing per output element.
+     */
+    public void multiplyTile(int fromRow, int toRow, int fromCol, int toCol, int fromK, int toK,
+                             SharedMatrix right, double[][] out, double alpha) {
+        multiplyTile(fromRow, toRow, fromCol, toCol, fromK, toK, right, out, alpha, false);
+    }
+
+    /**
+     * Same as above. With rightPrivate the caller guarantees that nothing writes right while the call
+     * runs (a private operand built for one product, say): its vectors are then read without stamps
+     * or locks and the tile is accumulated straight into out. Otherwise the right vectors are first
+     * read optimistically into a private tile, and under read locks if a writer got in the way.
+     */
+    public void multiplyTile(int fromRow, int toRow, int fromCol, int toCol, int fromK, int toK,
+                             SharedMatrix right, double[][] out, double alpha, boolean rightPrivate) {
+        if (right == null || out == null) {
+            throw new IllegalArgumentException("Matrix cannot be null");
+        }
+        if (right == this) {
+            throw new IllegalArgumentException("Cannot multiply a matrix in place by itself");
+        }
+        SharedVector[] left = this.vectors;
+        SharedVector[] rightVecs = right.vectors;
+        if (fromRow < 0 || toRow > left.length || fromRow > toRow) {
+            throw new IndexOutOfBoundsException("Rows [" + fromRow + ", " + toRow + ") out of bounds for length " + left.length);
+        }
+        if (rightVecs.length == 0) {
+            throw new IllegalArgumentException("Matrix cannot be empty");
+        }
+        if (fromRow == toRow || fromCol == toCol || fromK == toK) {
+            return;
+        }
+        double[][] c = Arrays.copyOfRange(out, fromRow, toRow);
+        if (rightPrivate) {
+            int[] range = rightRange(rightVecs, fromCol, toCol, fromK, toK);
+            acquireRangeReadLocks(left, fromRow, toRow);
+            try {
+                tileProduct(left, fromRow, toRow, fromCol, toCol, fromK, toK, rightVecs, c, fromCol, alpha);
+            }
+            finally {
+                releaseRangeReadLocks(left, fromRow, toRow);
+            }
+            return;
+        }
+        //the right vectors are shared by every tile of the product, so they are first read without their locks
+        if (tryTileOptimistic(left, fromRow, toRow, fromCol, toCol, fromK, toK, rightVecs, out, alpha)) {
+            return;
+        }
+        //vector 0 tells the layout, and with it which vectors the tile touches, so it is locked along with them
+        while (true) {
+            int[] range = rightRange(rightVecs, fromCol, toCol, fromK, toK);
+            int rFrom = range[0], rTo = range[1];
+            boolean columns = rightVecs[0].orientation() == VectorOrientation.COLUMN_MAJOR;
+            boolean done;
+            if (this.lockOrder() < right.lockOrder()) {
+                acquireRangeReadLocks(left, fromRow, toRow);
+                try {
+                    done = multiplyLocked(left, fromRow, toRow, fromCol, toCol, fromK, toK, rightVecs, range, columns, c, alpha);
+                }
+                finally {
+                    releaseRangeReadLocks(left, fromRow, toRow);
+                }
+            }
+            else {
+                lockRight(rightVecs, rFrom, rTo);
+                try {
+                    acquireRangeReadLocks(left, fromRow, toRow);
+                    try {
+                        done = (rightVecs[0].orientation() == VectorOrientation.COLUMN_MAJOR) == columns;
+                        if (done) {
+                            tileProduct(left, fromRow, toRow, fromCol, toCol, fromK, toK, rightVecs, c, fromCol, alpha);
+                        }
+                    }
+                    finally {
+                        releaseRangeReadLocks(left, fromRow, toRow);
+                    }
+                }
+                finally {
+                    unlockRight(rightVecs, rFrom, rTo);
+                }
+            }
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    //left rows are read locked by the caller; false, with nothing computed, if the layout changed before the locks
+    private static boolean multiplyLocked(SharedVector[] left, int fromRow, int toRow, int fromCol, int toCol, int fromK, int toK,
+                                          SharedVector[] right, int[] range, boolean columns, double[][] c, double alpha) {
+        lockRight(right, range[0], range[1]);
+        try {
+            if ((right[0].orientation() == VectorOrientation.COLUMN_MAJOR) != columns) {
+                return false;
+            }
+            tileProduct(left, fromRow, toRow, fromCol, toCol, fromK, toK, right, c, fromCol, alpha);
+            return true;
+        }
+        finally {
+            unlockRight(right, range[0], range[1]);
+        }
+    }
+
+    //vector 0 and the touched vectors [from, to), in index order
+    private static void lockRight(SharedVector[] right, int from, int to) {
+        if (from > 0) {
+            right[0].readLock();
+        }
+        acquireRangeReadLocks(right, from, to);
+    }
+
+    private static void unlockRight(SharedVector[] right, int from, int to) {
+        releaseRangeReadLocks(right, from, to);
+        if (from > 0) {
+            right[0].readUnlock();
+        }
+    }
+
+    //the right vectors a tile touches: rows of the K slice, or columns of the tile when right is column-major
+    private static int[] rightRange(SharedVector[] right, int fromCol, int toCol, int fromK, int toK) {
+        boolean rightColumns = right[0].orientation() == VectorOrientation.COLUMN_MAJOR;
+        int rFrom = rightColumns ? fromCol : fromK;
+        int rTo = rightColumns ? toCol : toK;
+        if (rFrom < 0 || rTo > right.length || rFrom > rTo) {
+            throw new IndexOutOfBoundsException("Tile [" + rFrom + ", " + rTo + ") out of bounds for length " + right.length);
+        }
+        return new int[]{rFrom, rTo};
+    }
+
+    /**
+     * Computes the tile with only the left rows read locked and the right vectors stamped, vector 0
+     * (which gives the layout) and the touched ones, into a private buffer that is added to out once
+     * the stamps are still valid.
+     * Returns false, with out unchanged, if a writer held or took one of the right vectors meanwhile.
+     */
+    private static boolean tryTileOptimistic(SharedVector[] left, int fromRow, int toRow, int fromCol, int toCol,
+                                             int fromK, int toK, SharedVector[] right, double[][] out, double alpha) {
+        long first = right[0].tryOptimisticRead();
+        if (first == 0) {
+            return false; //a writer holds the lock right now
+        }
+        int[] range;
+        try {
+            range = rightRange(right, fromCol, toCol, fromK, toK);
+        }
+        catch (RuntimeException e) {
+            if (!right[0].validate(first)) {
+                return false;
+            }
+            throw e;
+        }
+        int rFrom = range[0];
+        long[] stamps = new long[range[1] - rFrom];
+        for (int p = 0; p < stamps.length; p++) {
+            stamps[p] = right[rFrom + p].tryOptimisticRead();
+            if (stamps[p] == 0) {
+                return false;
+            }
+        }
+        int nl = toCol - fromCol;
+        acquireRangeReadLocks(left, fromRow, toRow);
+        try {
+            double[][] tile = new double[toRow - fromRow][nl];
+            try {
+                tileProduct(left, fromRow, toRow, fromCol, toCol, fromK, toK, right, tile, 0, alpha);
+            }
+            catch (RuntimeException e) {
+                //a torn read can fail in odd ways, it only counts if the reads were consistent
+                if (!right[0].validate(first) || !rangeValid(right, rFrom, stamps)) {
+                    return false;
+                }
+                throw e;
+            }
+            if (!right[0].validate(first) || !rangeValid(right, rFrom, stamps)) {
+                return false;
+            }
+            for (int i = 0; i < tile.length; i++) {
+                VectorKernels.add(out[fromRow + i], fromCol, 1, tile[i], 0, 1, nl);
+            }
+            return true;
+        }
+        finally {
+            releaseRangeReadLocks(left, fromRow, toRow);
+        }
+    }
+
+    private static boolean rangeValid(SharedVector[] vecs, int from, long[] stamps) {
+        for (int i = 0; i < stamps.length; i++) {
+            if (!vecs[from + i].validate(stamps[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //the touched left rows are read locked by the caller, the right vectors (vector 0 included) locked or stamped
+    //c holds the tile rows, output column fromCol lands at column cOff of c
+    private static void tileProduct(SharedVector[] left, int fromRow, int toRow, int fromCol, int toCol,
+                                    int fromK, int toK, SharedVector[] right, double[][] c, int cOff, double alpha) {
+        if (left[fromRow].orientation() != VectorOrientation.ROW_MAJOR) {
+            throw new IllegalArgumentException("The left matrix must be stored row-major for multiplication.");
+        }
+        boolean rightColumns = right[0].orientation() == VectorOrientation.COLUMN_MAJOR;
+        int k = rightColumns ? right[0].size() : right.length;
+        int n = rightColumns ? right.length : right[0].size();
+        if (fromCol < 0 || toCol > n || fromCol > toCol || fromK < 0 || toK > k || fromK > toK) {
+            throw new IndexOutOfBoundsException("Tile out of bounds for a product with " + k + " inner and " + n + " output columns");
+        }
+        int m = toRow - fromRow;
+        int kl = toK - fromK;
+        int nl = toCol - fromCol;
+
+        //pack the K slice of the left rows so the kernel reads them contiguously
+        double[] a = new double[m * kl];
+        for (int i = 0; i < m; i++) {
+            SharedVector row = left[fromRow + i];
+            if (row.size() != k) {
+                throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
+            }
+            VectorKernels.gather(row.data(), row.offset() + fromK * row.stride(), row.stride(), a, i * kl, kl);
+        }
+        if (alpha != 1.0) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] *= alpha;
+            }
+        }
+        if (rightColumns) {
+            for (int j = fromCol; j < toCol; j++) {
+                SharedVector col = right[j];
+                if (col.size() != k) {
+                    throw new IllegalArgumentException("Input matrix must be rectangular.");
+                }
+                int kOff = col.offset() + fromK * col.stride();
+                for (int i = 0; i < m; i++) {
+                    c[i][j - fromCol + cOff] += VectorKernels.dot(a, i * kl, 1, col.data(), kOff, col.stride(), kl);
+                }
+            }
+        }
+        else {
+            double[][] b = new double[kl][];
+            int[] bOff = new int[kl];
+            for (int p = 0; p < kl; p++) {
+                SharedVector row = right[fromK + p];
+                if (row.size() != n) {
+                    throw new IllegalArgumentException("Input matrix must be rectangular.");
+                }
+                if (row.stride() == 1) {
+                    b[p] = row.data();
+                    bOff[p] = row.offset() + fromCol;
+                }
+                else {
+                    double[] packed = new double[nl];
+                    VectorKernels.gather(row.data(), row.offset() + fromCol * row.stride(), row.stride(), packed, 0, nl);
+                    b[p] = packed;
+                }
+            }
+            BlockedGemm.multiply(a, m, kl, b, bOff, nl, c, cOff);
+        }
+    }
+
+    /**
+     * Adds rows [fromRow, toRow) of partial into target, used to reduce products split along
+     * the inner dimension. Both are plain buffers owned by the caller, no locks are taken.
+     */
+    public static void addRows(double[][] target, double[][] partial, int fromRow, int toRow) {
+        for (int i = fromRow; i < toRow; i++) {
+            if (target[i].length != partial[i].length) {
+                throw new IllegalArgumentException("Matrices must have the same dimensions to add.");
+            }
+            VectorKernels.add(target[i], 0, 1, partial[i], 0, 1, target[i].length);
+        }
+    }
+
+    /**
+     * Writes rows [fromRow, toRow) of the signed sum of terms into target, reading every term once.
+     * Term t contributes signs[t] times terms[t], or times the transpose of terms[t] when across[t]
+     * is set (row i then comes from column i of the stored rows). When target is terms[0] itself the
+     * first term is updated in place. Plain buffers owned by the caller, no locks are taken.
+     */
+    public static void sumRows(double[][] target, double[][][] terms, double[] signs, boolean[] across, int fromRow, int toRow) {
+        for (int i = fromRow; i < toRow; i++) {
+            double[] out = target[i];
+            int n = out.length;
+            for (int t = 0; t < terms.length; t++) {
+                double sign = signs[t];
+                if (across[t]) {
+                    double[][] src = terms[t];
+                    if (src.length != n) {
+                        throw new IllegalArgumentException("Matrices must have the same dimensions to add.");
+                    }
+                    for (int j = 0; j < n; j++) {
+                        out[j] = t == 0 ? sign * src[j][i] : out[j] + sign * src[j][i];
+                    }
+                    continue;
+                }
+                double[] src = terms[t][i];
+                if (src.length != n) {
+                    throw new IllegalArgumentException("Matrices must have the same dimensions to add.");
+                }
+                if (t == 0) {
+                    if (src != out) {
+                        System.arraycopy(src, 0, out, 0, n);
+                    }
+                    if (sign == -1.0) {
+                        VectorKernels.negate(out, 0, 1, n);
+                    }
+                    else if (sign != 1.0) {
+                        for (int j = 0; j < n; j++) {
+                            out[j] *= sign;
+                        }
+                    }
+                }
+                else if (sign == 1.0) {
+                    VectorKernels.add(out, 0, 1, src, 0, 1, n);
+                }
+                else {
+                    VectorKernels.axpy(sign, src, 0, 1, out, 0, n);
+                }
+            }
+        }
+    }
+
+    private static void acquireRangeReadLocks(SharedVector[] vecs, int from, int to) {
+        for (int i = from; i < to; i++) {
+            vecs[i].readLock();
+        }
+    }
+
+    private static void releaseRangeReadLocks(SharedVector[] vecs, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            vecs[i].readUnlock();
+        }
     }
 
     public SharedVector get(int index) {
@@ -160,6 +694,15 @@ public class SharedMatrix {
         return snap.length;
     }
 
+    long lockOrder() {
+        return lockOrder;
+    }
+
+    //snapshot of the current vectors, lets the bulk kernels lock and read them without going through get()
+    SharedVector[] vectors() {
+        return this.vectors;
+    }
+
     public VectorOrientation getOrientation() {
         SharedVector[] snap = this.vectors;
         if (snap.length == 0) {
@@ -168,7 +711,7 @@ public class SharedMatrix {
         SharedVector v0 = snap[0];
         v0.readLock();
          try {
-            return v0.getOrientation();
+            return v0.orientation();
         } 
         finally {
             v0.readUnlock();
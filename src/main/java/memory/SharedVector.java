@@ -1,12 +1,23 @@
 package memory;
 
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
+/**
+ * A vector guarded by a StampedLock.
+ * Single-element reads (get, length, getOrientation) are optimistic: they read without
+ * writing to the lock word and only fall back to a read lock if a writer got in between.
+ * The lock is not reentrant, so code holding one of this vector's locks must use the
+ * raw accessors below instead of the public getters.
+ */
 public class SharedVector {
 
-    private double[] vector;
+    private double[] vector; // backing storage, may be shared with the other vectors of a SharedMatrix
+    private int offset; // position of element 0 inside vector
+    private int length; // number of elements this vector exposes
+    private int stride; // distance inside vector between two consecutive elements
     private VectorOrientation orientation;
-    private ReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+    private final StampedLock lock = new StampedLock();
+    private final long lockOrder = LockOrder.next(); // objects with a smaller id are locked first
 
     //constructor
     public SharedVector(double[] vector, VectorOrientation orientation) {
@@ -19,16 +30,65 @@ public class SharedVector {
         throw new IllegalArgumentException("SharedVector orientation cannot be null.");
     }
         this.vector = vector;
+        this.offset = 0;
+        this.length = vector.length;
+        this.stride = 1;
         this.orientation = orientation;
     }
 
+    /**
+     * Creates a view over a slice of a larger backing array.
+     * Element i of the vector is stored at data[offset + i * stride], so a SharedMatrix
+     * can keep all of its rows (or columns) inside one contiguous array.
+     */
+    SharedVector(double[] data, int offset, int length, int stride, VectorOrientation orientation) {
+        if (data == null) {
+            throw new IllegalArgumentException("SharedVector cannot be initialized with a null array.");
+        }
+        if (orientation == null) {
+            throw new IllegalArgumentException("SharedVector orientation cannot be null.");
+        }
+        if (offset < 0 || length < 0 || stride <= 0) {
+            throw new IllegalArgumentException("Invalid view bounds.");
+        }
+        if (length > 0 && offset + (long) (length - 1) * stride >= data.length) {
+            throw new IllegalArgumentException("View exceeds the backing array.");
+        }
+        this.vector = data;
+        this.offset = offset;
+        this.length = length;
+        this.stride = stride;
+        this.orientation = orientation;
+    }
+
+    //maps a logical index to its position inside the backing array
+    private int at(int index) {
+        return offset + index * stride;
+    }
+
     public double get(int index) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            //copy the fields first, they may be inconsistent until the stamp is validated
+            double[] data = vector;
+            int len = length;
+            int pos = offset + index * stride;
+            if (index >= 0 && index < len && pos >= 0 && pos < data.length) {
+                double value = data[pos];
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            else if (lock.validate(stamp)) {
+                throw new IndexOutOfBoundsException("Index " + index + " is out of bounds.");
+            }
+        }
         readLock();
         try {
-           if (index < 0 || index >= vector.length) {
+           if (index < 0 || index >= length) {
             throw new IndexOutOfBoundsException("Index " + index + " is out of bounds.");
             }
-            return vector[index];
+            return vector[at(index)];
         } 
         finally {
             readUnlock(); // Release read lock
@@ -36,9 +96,14 @@ public class SharedVector {
     }
 
     public int length() {
+        long stamp = lock.tryOptimisticRead();
+        int len = length;
+        if (stamp != 0 && lock.validate(stamp)) {
+            return len;
+        }
         readLock();
         try {
-            return vector.length;
+            return length;
         } 
         finally {
             readUnlock(); // Release read lock
@@ -46,6 +111,11 @@ public class SharedVector {
     }
 
     public VectorOrientation getOrientation() {
+        long stamp = lock.tryOptimisticRead();
+        VectorOrientation o = orientation;
+        if (stamp != 0 && lock.validate(stamp)) {
+            return o;
+        }
         readLock();
         try {
             return orientation;
@@ -56,33 +126,81 @@ public class SharedVector {
     }
 
     public void writeLock() {
-        lock.writeLock().lock();
+        lock.asWriteLock().lock();
     }
 
     public void writeUnlock() {
-        lock.writeLock().unlock();
+        lock.asWriteLock().unlock();
     }
 
     public void readLock() {
-        lock.readLock().lock(); 
+        lock.asReadLock().lock(); 
     }
 
     public void readUnlock() {
-        lock.readLock().unlock();
+        lock.asReadLock().unlock();
+    }
+
+    long lockOrder() {
+        return lockOrder;
+    }
+
+    //optimistic bulk reads for this package: take a stamp, read the raw fields, then validate
+    long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    boolean validate(long stamp) {
+        return stamp != 0 && lock.validate(stamp);
+    }
+
+    // Raw access for the bulk kernels in this package, the caller must already hold the matching lock.
+    double[] data() {
+        return vector;
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    int stride() {
+        return stride;
+    }
+
+    int size() {
+        return length;
+    }
+
+    VectorOrientation orientation() {
+        return orientation;
+    }
+
+    //points this vector at new storage, the caller must hold the write lock
+    void replace(double[] data, int offset, int length, int stride, VectorOrientation orientation) {
+        this.vector = data;
+        this.offset = offset;
+        this.length = length;
+        this.stride = stride;
+        this.orientation = orientation;
     }
 
     public void transpose() {
         writeLock();
         try{
-            if (orientation == VectorOrientation.ROW_MAJOR) {
-                orientation = VectorOrientation.COLUMN_MAJOR;
-            } 
-            else {
-                orientation = VectorOrientation.ROW_MAJOR;
-            }
+            flipOrientation();
         } 
         finally {
-            lock.writeLock().unlock(); // Release write lock
+            writeUnlock(); // Release write lock
+        }
+    }
+
+    //the caller must hold the write lock
+    void flipOrientation() {
+        if (orientation == VectorOrientation.ROW_MAJOR) {
+            orientation = VectorOrientation.COLUMN_MAJOR;
+        } 
+        else {
+            orientation = VectorOrientation.ROW_MAJOR;
         }
     }
 
@@ -90,21 +208,24 @@ public class SharedVector {
         if (other == null) {
                 throw new IllegalArgumentException("Cannot add a null vector.");
             }
+        //the lock is not reentrant, so v.add(v) only takes the write lock
+        if (other == this) {
+            writeLock();
+            try {
+                addLocked(other);
+            }
+            finally {
+                writeUnlock();
+            }
+            return;
+        }
         
-        if (System.identityHashCode(this) > System.identityHashCode(other)) {
+        if (this.lockOrder() > other.lockOrder()) {
             other.readLock();
             try {
                 writeLock();
                 try{
-                    if (this.orientation != other.orientation) {
-                        throw new IllegalArgumentException("Vectors must have the same orientation to add.");
-                    }
-                    if (this.length() != other.length()) {
-                        throw new IllegalArgumentException("Vectors must be of the same length to add.");
-                    }
-                    for (int i = 0; i < this.length(); i++) {
-                        this.vector[i] = this.vector[i] + other.get(i);
-                    }
+                    addLocked(other);
                 } 
                 finally {
                     writeUnlock(); // Release write lock
@@ -114,20 +235,12 @@ public class SharedVector {
                 other.readUnlock(); // Release read lock
                 }
         }
-        else if (System.identityHashCode(this) < System.identityHashCode(other)) { 
+        else { 
             writeLock();
             try {
                 other.readLock();
                 try{
-                    if (this.orientation != other.orientation) {
-                        throw new IllegalArgumentException("Vectors must have the same orientation to add.");
-                    }
-                    if (this.length() != other.length()) {
-                        throw new IllegalArgumentException("Vectors must be of the same length to add.");
-                    }
-                    for (int i = 0; i < this.length(); i++) {
-                        this.vector[i] = this.vector[i] + other.get(i);
-                    }
+                    addLocked(other);
                 } 
                 finally {
                     other.readUnlock(); // Release read lock
@@ -137,217 +250,190 @@ public class SharedVector {
                 writeUnlock(); // Release write lock
             }
         }
-        else  {
-        synchronized (SharedVector.class) {
-            writeLock();
-            try {
-                other.readLock();
-                try {
-                    
-                    if (this.orientation != other.orientation) {
-                        throw new IllegalArgumentException("Vectors must have the same orientation to add.");
-                    }
-                    if (this.length() != other.length()) {
-                        throw new IllegalArgumentException("Vectors must be of the same length to add.");
-                    }
-                    for (int i = 0; i < this.length(); i++) {
-                        this.vector[i] = this.vector[i] + other.get(i);
-                    }
-                } finally {
-                    other.readUnlock();
-                }
-            } finally {
-                writeUnlock();
-            }
+    }
+
+    //both locks are held, so the raw arrays can be used without locking every element
+    private void addLocked(SharedVector other) {
+        if (this.orientation != other.orientation) {
+            throw new IllegalArgumentException("Vectors must have the same orientation to add.");
+        }
+        if (this.length != other.length) {
+            throw new IllegalArgumentException("Vectors must be of the same length to add.");
         }
+        VectorKernels.add(this.vector, this.offset, this.stride, other.vector, other.offset, other.stride, length);
     }
-}
 
 
     public void negate() {
         writeLock();
         try{
-            for (int i = 0; i < this.length(); i++) {
-                this.vector[i] = -1 * this.vector[i];
-            }
+            VectorKernels.negate(vector, offset, stride, length);
         } 
         finally {
             writeUnlock(); // Release write lock
         }
     }
 
+    //read-only, any number of threads can compute dot products against the same vector at once
     public double dot(SharedVector other) {
         if (other == null) {
                 throw new IllegalArgumentException("Cannot compute dot product with a null vector.");
             }
-        if (System.identityHashCode(this) > System.identityHashCode(other)) {
-            other.readLock();
+        return readBoth(other, () -> dotLocked(other));
+    }
+
+    /**
+     * Runs a read-only reduction over this vector and other.
+     * It first reads both without locking and validates the stamps afterwards; if a writer
+     * interfered it runs again under read locks, taken in lock id order like add() takes its
+     * locks so that readers and writers can never wait on each other in a cycle.
+     */
+    private double readBoth(SharedVector other, java.util.function.DoubleSupplier reduction) {
+        long mine = lock.tryOptimisticRead();
+        long theirs = other.lock.tryOptimisticRead();
+        if (mine != 0 && theirs != 0) {
             try {
-                writeLock();
-                try{
-                    if (this.orientation != other.orientation) {
-                        throw new IllegalArgumentException("Vectors must have the same orientation to add.");
-                    }
-                    if (this.length() != other.length()) {
-                        throw new IllegalArgumentException("Vectors must be of the same length to add.");
-                    }
-                    double sum = 0.0;
-                    for (int i = 0; i < this.length(); i++) {
-                        sum = sum + (this.vector[i] * other.get(i));
-                    }
-                    return sum;
-                } 
-                finally {
-                    writeUnlock(); // Release write lock
+                double result = reduction.getAsDouble();
+                if (lock.validate(mine) && other.lock.validate(theirs)) {
+                    return result;
                 }
             }
-            finally {
-                other.readUnlock(); // Release read lock
+            catch (RuntimeException e) {
+                //only trust the error if what we read was consistent
+                if (lock.validate(mine) && other.lock.validate(theirs)) {
+                    throw e;
                 }
-        }else if (System.identityHashCode(this) < System.identityHashCode(other)) { 
-            writeLock();
+            }
+        }
+        if (other == this) {
+            readLock();
             try {
-                other.readLock();
-                try{
-                    if (this.orientation != other.orientation) {
-                        throw new IllegalArgumentException("Vectors must have the same orientation to add.");
-                    }
-                    if (this.length() != other.length()) {
-                        throw new IllegalArgumentException("Vectors must be of the same length to add.");
-                    }
-                    double sum = 0.0;
-                    for (int i = 0; i < this.length(); i++) {
-                        sum = sum + (this.vector[i] * other.get(i));
-                    }
-                    return sum;
-                } 
+                return reduction.getAsDouble();
+            }
+            finally {
+                readUnlock();
+            }
+        }
+        if (this.lockOrder() > other.lockOrder()) {
+            other.readLock();
+            try {
+                readLock();
+                try {
+                    return reduction.getAsDouble();
+                }
                 finally {
-                    other.readUnlock(); // Release read lock
+                    readUnlock();
                 }
             }
             finally {
-                writeUnlock(); // Release write lock
+                other.readUnlock();
             }
         }
-        else  {
-        synchronized (SharedVector.class) {
-            writeLock();
+        else {
+            readLock();
             try {
                 other.readLock();
                 try {
-                    
-                    if (this.orientation != other.orientation) {
-                        throw new IllegalArgumentException("Vectors must have the same orientation to add.");
-                    }
-                    if (this.length() != other.length()) {
-                        throw new IllegalArgumentException("Vectors must be of the same length to add.");
-                    }
-                    double sum = 0.0;
-                    for (int i = 0; i < this.length(); i++) {
-                        sum = sum + (this.vector[i] * other.get(i));
-                    }
-                    return sum;
-                } finally {
+                    return reduction.getAsDouble();
+                }
+                finally {
                     other.readUnlock();
                 }
-            } finally {
-                writeUnlock();
             }
+            finally {
+                readUnlock();
+            }
+        }
+    }
+
+    //both vectors are read locked or stamped
+    private double dotLocked(SharedVector other) {
+        if (this.orientation != other.orientation) {
+            throw new IllegalArgumentException("Vectors must have the same orientation to add.");
+        }
+        if (this.length != other.length) {
+            throw new IllegalArgumentException("Vectors must be of the same length to add.");
         }
+        return VectorKernels.dot(this.vector, this.offset, this.stride, other.vector, other.offset, other.stride, length);
     }
 
 
     //compute row-vector × matrix
-}    public void vecMatMul(SharedMatrix matrix) {
+    public void vecMatMul(SharedMatrix matrix) {
         if (matrix == null) {
         throw new IllegalArgumentException("Matrix cannot be null");
         }
-        if (matrix.length() == 0) {
+        SharedVector[] rows = matrix.vectors(); //one snapshot for the whole operation
+        if (rows.length == 0) {
             throw new IllegalArgumentException("Matrix cannot be empty");
         }
-        if (System.identityHashCode(this) < System.identityHashCode(matrix)) {
+        if (this.lockOrder() < matrix.lockOrder()) {
             this.writeLock();
             try{
-             for (int i = 0; i < matrix.length(); i++) matrix.get(i).readLock();
+             lockRowsForRead(rows);
                 try{
-                    if (this.length() != matrix.length()) {
-                        throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
-                    }
-                    double[] result = new double[matrix.get(0).length()];
-                    for (int j = 0; j < matrix.get(0).length(); j++) {
-                        double sum = 0.0;
-                        for (int i = 0; i < matrix.length(); i++) {
-                            sum += this.vector[i] * matrix.get(i).get(j);
-                        }
-                        result[j] = sum;
-                    }
-                    this.vector = result;
-                    this.orientation = VectorOrientation.ROW_MAJOR;
+                    vecMatMulLocked(rows);
                 } 
                 finally {
-                  for (int i = 0; i < matrix.length(); i++) matrix.get(i).readUnlock();
+                  unlockRowsForRead(rows);
                 }
             }
             finally {
                 this.writeUnlock();
             }
-        } 
-        else if (System.identityHashCode(this) > System.identityHashCode(matrix)) {
-           for (int i = 0; i < matrix.length(); i++) matrix.get(i).readLock();
+        }
+        else {
+           lockRowsForRead(rows);
             try{
                 this.writeLock();
                 try{
-                    if (this.length() != matrix.length()) {
-                        throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
-                    }
-                    double[] result = new double[matrix.get(0).length()];
-                    for (int j = 0; j < matrix.get(0).length(); j++) {
-                        double sum = 0.0;
-                        for (int i = 0; i < matrix.length(); i++) {
-                            sum += this.vector[i] * matrix.get(i).get(j);
-                        }
-                        result[j] = sum;
-                    }
-                    this.vector = result;
-                    this.orientation = VectorOrientation.ROW_MAJOR;
+                    vecMatMulLocked(rows);
                 } 
                 finally {
                     this.writeUnlock();
                 }
             }
             finally {
-               for (int i = 0; i < matrix.length(); i++) matrix.get(i).readUnlock();
+               unlockRowsForRead(rows);
             }
         }
-        else {
-            synchronized(SharedVector.class) {
-                this.writeLock();
-                try{
-                   for (int i = 0; i < matrix.length(); i++) matrix.get(i).readLock();
-                    try{
-                        if (this.length() != matrix.length()) {
-                            throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
-                        }
-                        double[] result = new double[matrix.get(0).length()];
-                        for (int j = 0; j <matrix.get(0).length(); j++) {
-                            double sum = 0.0;
-                            for (int i = 0; i < matrix.length(); i++) {
-                                sum += this.vector[i] * matrix.get(i).get(j);
-                            }
-                            result[j] = sum;
-                        }
-                        this.vector = result;
-                        this.orientation = VectorOrientation.ROW_MAJOR;
-                    }
-                    finally {
-                       for (int i = 0; i < matrix.length(); i++) matrix.get(i).readUnlock();
-                    }
-                }
-                finally {
-                    this.writeUnlock();
-                }
+    }
+
+    //this vector may itself be one of the rows, it is already write locked then
+    private void lockRowsForRead(SharedVector[] rows) {
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != this) {
+                rows[i].readLock();
             }
         }
     }
-}
 
+    private void unlockRowsForRead(SharedVector[] rows) {
+        for (int i = rows.length - 1; i >= 0; i--) {
+            if (rows[i] != this) {
+                rows[i].readUnlock();
+            }
+        }
+    }
+
+    //result = sum over i of this[i] * row i, so every row of the matrix is streamed once in order
+    private void vecMatMulLocked(SharedVector[] rows) {
+        if (this.length != rows.length) {
+            throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
+        }
+        int n = rows[0].length;
+        double[] result = new double[n];
+        for (int i = 0; i < rows.length; i++) {
+            SharedVector row = rows[i];
+            if (row.length != n) {
+                throw new IllegalArgumentException("Input matrix must be rectangular.");
+            }
+            VectorKernels.axpy(this.vector[at(i)], row.vector, row.offset, row.stride, result, 0, n);
+        }
+        this.vector = result; //the result lives in its own array from now on
+        this.offset = 0;
+        this.length = n;
+        this.stride = 1;
+        this.orientation = VectorOrientation.ROW_MAJOR;
+    }
+}
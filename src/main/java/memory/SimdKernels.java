@@ -0,0 +1,120 @@
+package memory;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels written against the incubating Vector API, using the widest species the CPU supports
+ * (4 lanes on AVX2, 8 on AVX-512). Strided inputs are delegated to the scalar loops.
+ * This class is only loaded when jdk.incubator.vector is in the boot layer, see VectorKernels.
+ */
+final class SimdKernels implements KernelSet {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ScalarKernels scalar = new ScalarKernels();
+
+    @Override
+    public void add(double[] dst, int dOff, int dStride, double[] src, int sOff, int sStride, int n) {
+        if (dStride != 1 || sStride != 1) {
+            scalar.add(dst, dOff, dStride, src, sOff, sStride, n);
+            return;
+        }
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, dst, dOff + i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, src, sOff + i);
+            a.add(b).intoArray(dst, dOff + i);
+        }
+        for (; i < n; i++) {
+            dst[dOff + i] += src[sOff + i];
+        }
+    }
+
+    @Override
+    public void negate(double[] x, int off, int stride, int n) {
+        if (stride != 1) {
+            scalar.negate(x, off, stride, n);
+            return;
+        }
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, off + i).neg().intoArray(x, off + i);
+        }
+        for (; i < n; i++) {
+            x[off + i] = -x[off + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] x, int xOff, int xStride, double[] y, int yOff, int yStride, int n) {
+        if (xStride != 1 || yStride != 1) {
+            return scalar.dot(x, xOff, xStride, y, yOff, yStride, n);
+        }
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, x, xOff + i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, y, yOff + i);
+            acc = a.fma(b, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            sum += x[xOff + i] * y[yOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double a, double[] x, int xOff, int xStride, double[] y, int yOff, int n) {
+        if (xStride != 1) {
+            scalar.axpy(a, x, xOff, xStride, y, yOff, n);
+            return;
+        }
+        DoubleVector va = DoubleVector.broadcast(SPECIES, a);
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOff + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOff + i);
+            vx.fma(va, vy).intoArray(y, yOff + i);
+        }
+        for (; i < n; i++) {
+            y[yOff + i] += a * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void axpy4(double x0, double x1, double x2, double x3, double[] b, int bOff,
+                      double[] c0, double[] c1, double[] c2, double[] c3, int cOff, int n) {
+        DoubleVector v0 = DoubleVector.broadcast(SPECIES, x0);
+        DoubleVector v1 = DoubleVector.broadcast(SPECIES, x1);
+        DoubleVector v2 = DoubleVector.broadcast(SPECIES, x2);
+        DoubleVector v3 = DoubleVector.broadcast(SPECIES, x3);
+        int j = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; j < bound; j += SPECIES.length()) {
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOff + j);
+            y.fma(v0, DoubleVector.fromArray(SPECIES, c0, cOff + j)).intoArray(c0, cOff + j);
+            y.fma(v1, DoubleVector.fromArray(SPECIES, c1, cOff + j)).intoArray(c1, cOff + j);
+            y.fma(v2, DoubleVector.fromArray(SPECIES, c2, cOff + j)).intoArray(c2, cOff + j);
+            y.fma(v3, DoubleVector.fromArray(SPECIES, c3, cOff + j)).intoArray(c3, cOff + j);
+        }
+        for (; j < n; j++) {
+            double y = b[bOff + j];
+            c0[cOff + j] += x0 * y;
+            c1[cOff + j] += x1 * y;
+            c2[cOff + j] += x2 * y;
+            c3[cOff + j] += x3 * y;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "simd(" + SPECIES.length() + " lanes)";
+    }
+}
@@ -0,0 +1,171 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed sparse row (CSR) matrix.
+ * The nonzeros of row i are values[rowPtr[i] .. rowPtr[i+1]) and sit in the columns colIdx[...],
+ * sorted by column. The kernels below write into dense double[][] results (the representation
+ * used by the computation tree) and work on row ranges so they can be split into tasks.
+ */
+public class SparseMatrix {
+
+    private final int rows;
+    private final int cols;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final double[] values;
+
+    private SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    public static SparseMatrix fromDense(double[][] matrix) {
+        if (matrix == null) {
+            throw new IllegalArgumentException("Input matrix cannot be null.");
+        }
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        int nnz = 0;
+        for (double[] row : matrix) {
+            if (row.length != cols) {
+                throw new IllegalArgumentException("Input matrix must be rectangular.");
+            }
+            for (double v : row) {
+                if (v != 0.0) {
+                    nnz++;
+                }
+            }
+        }
+        int[] rowPtr = new int[rows + 1];
+        int[] colIdx = new int[nnz];
+        double[] values = new double[nnz];
+        int pos = 0;
+        for (int i = 0; i < rows; i++) {
+            double[] row = matrix[i];
+            for (int j = 0; j < cols; j++) {
+                if (row[j] != 0.0) {
+                    colIdx[pos] = j;
+                    values[pos] = row[j];
+                    pos++;
+                }
+            }
+            rowPtr[i + 1] = pos;
+        }
+        return new SparseMatrix(rows, cols, rowPtr, colIdx, values);
+    }
+
+    /**
+     * Returns true when at most maxDensity of the entries are nonzero.
+     * Stops scanning as soon as the limit is crossed, so dense inputs are rejected quickly.
+     */
+    public static boolean isSparse(double[][] matrix, double maxDensity) {
+        if (matrix == null || matrix.length == 0 || matrix[0].length == 0) {
+            return false;
+        }
+        long limit = (long) (maxDensity * ((long) matrix.length * matrix[0].length));
+        long nnz = 0;
+        for (double[] row : matrix) {
+            for (double v : row) {
+                if (v != 0.0 && ++nnz > limit) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int nonZeros() {
+        return values.length;
+    }
+
+    public double[][] toDense() {
+        double[][] out = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                out[i][colIdx[p]] = values[p];
+            }
+        }
+        return out;
+    }
+
+    // out[i] = this[i] * dense for i in [from, to), dense is cols x n
+    public void multiplyDenseRows(int from, int to, double[][] dense, double[][] out) {
+        checkInner(dense.length);
+        for (int i = from; i < to; i++) {
+            double[] target = out[i];
+            Arrays.fill(target, 0.0);
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                double[] row = dense[colIdx[p]];
+                VectorKernels.axpy(values[p], row, 0, 1, target, 0, target.length);
+            }
+        }
+    }
+
+    // out[i] = this[i] * right for i in [from, to), using a dense accumulator per row
+    public void multiplySparseRows(int from, int to, SparseMatrix right, double[][] out) {
+        checkInner(right.rows);
+        for (int i = from; i < to; i++) {
+            double[] target = out[i];
+            Arrays.fill(target, 0.0);
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                right.scatterRow(colIdx[p], values[p], target);
+            }
+        }
+    }
+
+    // out[i] = left[i] * this for i in [from, to), zero entries of the dense row are skipped
+    public void multiplyByDenseRows(double[][] left, int from, int to, double[][] out) {
+        for (int i = from; i < to; i++) {
+            double[] row = left[i];
+            if (row.length != rows) {
+                throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
+            }
+            double[] target = out[i];
+            Arrays.fill(target, 0.0);
+            for (int k = 0; k < rows; k++) {
+                if (row[k] != 0.0) {
+                    scatterRow(k, row[k], target);
+                }
+            }
+        }
+    }
+
+    // dense[i] += this[i] for i in [from, to)
+    public void addToRows(int from, int to, double[][] dense) {
+        for (int i = from; i < to; i++) {
+            double[] target = dense[i];
+            if (target.length != cols) {
+                throw new IllegalArgumentException("Vectors must be of the same length to add.");
+            }
+            for (int p = rowPtr[i]; p < rowPtr[i + 1]; p++) {
+                target[colIdx[p]] += values[p];
+            }
+        }
+    }
+
+    // target += scale * row k
+    private void scatterRow(int k, double scale, double[] target) {
+        for (int p = rowPtr[k]; p < rowPtr[k + 1]; p++) {
+            target[colIdx[p]] += scale * values[p];
+        }
+    }
+
+    private void checkInner(int otherRows) {
+        if (cols != otherRows) {
+            throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
+        }
+    }
+}
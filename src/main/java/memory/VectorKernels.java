@@ -0,0 +1,87 @@
+package memory;
+
+/**
+ * Element-wise loops over raw backing arrays.
+ * These methods take no locks, callers lock the vectors once per operation and then
+ * pass their (array, offset, stride) triples here.
+ *
+ * The loops themselves come from a KernelSet picked once at startup with the
+ * lae.kernels system property: "scalar", "simd", or "auto" (the default), which uses the
+ * Vector API when the JVM was started with --add-modules jdk.incubator.vector and
+ * the plain loops otherwise. An unknown value is reported and the plain loops are used.
+ */
+final class VectorKernels {
+
+    private static final KernelSet IMPL = select(System.getProperty("lae.kernels", "auto"));
+
+    private VectorKernels() {
+    }
+
+    static KernelSet select(String mode) {
+        if ("scalar".equals(mode)) {
+            return new ScalarKernels();
+        }
+        if (!"simd".equals(mode) && !"auto".equals(mode)) {
+            //a bad flag must not take the whole engine down from a static initializer
+            System.err.println("Unknown lae.kernels value '" + mode + "', using scalar kernels");
+            return new ScalarKernels();
+        }
+        KernelSet simd = loadSimd();
+        if (simd == null) {
+            if ("simd".equals(mode)) {
+                System.err.println("lae.kernels=simd requested but jdk.incubator.vector is not available, using scalar kernels");
+            }
+            return new ScalarKernels();
+        }
+        return simd;
+    }
+
+    //loaded by name so that SimdKernels is never linked when the incubator module is missing
+    private static KernelSet loadSimd() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (KernelSet) Class.forName("memory.SimdKernels").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    static String activeName() {
+        return IMPL.name();
+    }
+
+    static void add(double[] dst, int dOff, int dStride, double[] src, int sOff, int sStride, int n) {
+        IMPL.add(dst, dOff, dStride, src, sOff, sStride, n);
+    }
+
+    static void negate(double[] x, int off, int stride, int n) {
+        IMPL.negate(x, off, stride, n);
+    }
+
+    static double dot(double[] x, int xOff, int xStride, double[] y, int yOff, int yStride, int n) {
+        return IMPL.dot(x, xOff, xStride, y, yOff, yStride, n);
+    }
+
+    static void axpy(double a, double[] x, int xOff, int xStride, double[] y, int yOff, int n) {
+        IMPL.axpy(a, x, xOff, xStride, y, yOff, n);
+    }
+
+    static void axpy4(double x0, double x1, double x2, double x3, double[] b, int bOff,
+                      double[] c0, double[] c1, double[] c2, double[] c3, int cOff, int n) {
+        IMPL.axpy4(x0, x1, x2, x3, b, bOff, c0, c1, c2, c3, cOff, n);
+    }
+
+    // copies n elements of a strided source into a contiguous destination
+    static void gather(double[] src, int sOff, int sStride, double[] dst, int dOff, int n) {
+        if (sStride == 1) {
+            System.arraycopy(src, sOff, dst, dOff, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            dst[dOff + i] = src[sOff + i * sStride];
+        }
+    }
+}
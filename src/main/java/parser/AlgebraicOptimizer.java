@@ -0,0 +1,200 @@
+package parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule-based rewriting of the computation tree before it is evaluated.
+ * Every rule keeps the value of the expression and removes a full pass over a matrix or moves an
+ * operator to where it costs nothing: transposes are metadata in the engine, and a negation folds
+ * into the scalar of a multiplication. Runs after associative nesting (rules match binary nodes)
+ * and before common subexpression elimination. Nodes below the one being rewritten are never
+ * changed in place, new nodes are created instead.
+ */
+public final class AlgebraicOptimizer {
+
+    static final String DOUBLE_TRANSPOSE = "T(T(A)) -> A";
+    static final String DOUBLE_NEGATE = "-(-A) -> A";
+    static final String NEGATE_PRODUCT = "-(A*B) -> (-1)A*B";
+    static final String NEGATED_FACTOR = "(-A)*B -> (-1)A*B";
+    static final String NEGATE_TRANSPOSE = "-(T(A)) -> T(-A)";
+    static final String TRANSPOSE_PRODUCT = "T(A*B) -> T(B)*T(A)";
+    static final String NEGATED_SUM = "-(A) + -(B) -> -(A+B)";
+
+    private final Map<String, Integer> fired = new LinkedHashMap<>();
+
+    /**
+     * Rewrites the tree bottom-up until no rule applies and returns the new root,
+     * which is a different node when the root itself was simplified away.
+     */
+    public ComputationNode optimize(ComputationNode root) {
+        if (root == null) {
+            return null;
+        }
+        Map<ComputationNode, ComputationNode> replaced = new IdentityHashMap<>();
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.peek();
+            if (replaced.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            List<ComputationNode> children = node.getChildren();
+            boolean childrenDone = true;
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                for (ComputationNode child : children) {
+                    if (!replaced.containsKey(child)) {
+                        stack.push(child);
+                        childrenDone = false;
+                    }
+                }
+            }
+            if (!childrenDone) {
+                continue;
+            }
+            stack.pop();
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                for (int i = 0; i < children.size(); i++) {
+                    ComputationNode r = replaced.get(children.get(i));
+                    if (r != children.get(i)) {
+                        node.replaceChild(i, r);
+                    }
+                }
+            }
+            replaced.put(node, simplify(node));
+        }
+        return replaced.get(root);
+    }
+
+    /** How many times each rule fired, in the order the rules first fired. */
+    public Map<String, Integer> getFiredRules() {
+        return Collections.unmodifiableMap(fired);
+    }
+
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== Optimizer Report ===\n");
+        if (fired.isEmpty()) {
+            sb.append("no rules fired\n");
+        }
+        for (Map.Entry<String, Integer> e : fired.entrySet()) {
+            sb.append(e.getKey()).append(" | fired=").append(e.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    //children of node are simplified already
+    private ComputationNode simplify(ComputationNode node) {
+        ComputationNode next = applyOnce(node);
+        while (next != null) {
+            node = next;
+            next = applyOnce(node);
+        }
+        return node;
+    }
+
+    //the node that replaces node after one rule, or null if no rule applies
+    private ComputationNode applyOnce(ComputationNode node) {
+        List<ComputationNode> c = node.getChildren();
+        switch (node.getNodeType()) {
+            case TRANSPOSE:
+                if (isUnary(node, ComputationNodeType.TRANSPOSE)) {
+                    ComputationNode x = c.get(0);
+                    if (isUnary(x, ComputationNodeType.TRANSPOSE)) {
+                        fire(DOUBLE_TRANSPOSE);
+                        return x.getChildren().get(0);
+                    }
+                    //only worth it when one of the new transposes cancels, otherwise the engine
+                    //would have to rearrange a transposed left operand
+                    if (isBinary(x, ComputationNodeType.MULTIPLY)
+                        && (isUnary(x.getChildren().get(0), ComputationNodeType.TRANSPOSE)
+                            || isUnary(x.getChildren().get(1), ComputationNodeType.TRANSPOSE))) {
+                        fire(TRANSPOSE_PRODUCT);
+                        ComputationNode product = binary(ComputationNodeType.MULTIPLY,
+                                simplify(unary(ComputationNodeType.TRANSPOSE, x.getChildren().get(1))),
+                                simplify(unary(ComputationNodeType.TRANSPOSE, x.getChildren().get(0))));
+                        product.setScale(x.getScale());
+                        return product;
+                    }
+                }
+                return null;
+            case NEGATE:
+                if (isUnary(node, ComputationNodeType.NEGATE)) {
+                    ComputationNode x = c.get(0);
+                    if (isUnary(x, ComputationNodeType.NEGATE)) {
+                        fire(DOUBLE_NEGATE);
+                        return x.getChildren().get(0);
+                    }
+                    if (isBinary(x, ComputationNodeType.MULTIPLY)) {
+                        fire(NEGATE_PRODUCT);
+                        ComputationNode product = binary(ComputationNodeType.MULTIPLY, x.getChildren().get(0), x.getChildren().get(1));
+                        product.setScale(-x.getScale());
+                        return product;
+                    }
+                    //moving the negate below a transpose lets it fold or cancel there
+                    if (isUnary(x, ComputationNodeType.TRANSPOSE)) {
+                        ComputationNode inner = x.getChildren().get(0);
+                        if (isBinary(inner, ComputationNodeType.MULTIPLY) || isUnary(inner, ComputationNodeType.NEGATE)) {
+                            fire(NEGATE_TRANSPOSE);
+                            return unary(ComputationNodeType.TRANSPOSE, simplify(unary(ComputationNodeType.NEGATE, inner)));
+                        }
+                    }
+                }
+                return null;
+            case MULTIPLY:
+                if (isBinary(node, ComputationNodeType.MULTIPLY)) {
+                    for (int i = 0; i < 2; i++) {
+                        if (isUnary(c.get(i), ComputationNodeType.NEGATE)) {
+                            fire(NEGATED_FACTOR);
+                            node.replaceChild(i, c.get(i).getChildren().get(0));
+                            node.setScale(-node.getScale());
+                            return node;
+                        }
+                    }
+                }
+                return null;
+            case ADD:
+                if (isBinary(node, ComputationNodeType.ADD)
+                    && isUnary(c.get(0), ComputationNodeType.NEGATE) && isUnary(c.get(1), ComputationNodeType.NEGATE)) {
+                    fire(NEGATED_SUM);
+                    return unary(ComputationNodeType.NEGATE,
+                            binary(ComputationNodeType.ADD, c.get(0).getChildren().get(0), c.get(1).getChildren().get(0)));
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private void fire(String rule) {
+        fired.merge(rule, 1, Integer::sum);
+    }
+
+    private static boolean isUnary(ComputationNode node, ComputationNodeType type) {
+        return node.getNodeType() == type && node.getChildren() != null && node.getChildren().size() == 1;
+    }
+
+    private static boolean isBinary(ComputationNode node, ComputationNodeType type) {
+        return node.getNodeType() == type && node.getChildren() != null && node.getChildren().size() == 2;
+    }
+
+    private static ComputationNode unary(ComputationNodeType type, ComputationNode child) {
+        List<ComputationNode> children = new ArrayList<>(1);
+        children.add(child);
+        return new ComputationNode(type, children);
+    }
+
+    private static ComputationNode binary(ComputationNodeType type, ComputationNode left, ComputationNode right) {
+        List<ComputationNode> children = new ArrayList<>(2);
+        children.add(left);
+        children.add(right);
+        return new ComputationNode(type, children);
+    }
+}
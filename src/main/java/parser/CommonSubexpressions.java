@@ -0,0 +1,127 @@
+package parser;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hash-consing pass that turns the parsed tree into a DAG.
+ * Leaves are identified by their content, operators by their type and their (already merged)
+ * children, so every distinct subexpression is kept once and its other occurrences point to it.
+ * The engine evaluates a shared node once and hands the result to all of its parents.
+ * Operands are matched in order only: A + B and B + A stay two nodes.
+ */
+public final class CommonSubexpressions {
+
+    private CommonSubexpressions() {
+    }
+
+    /**
+     * Merges identical subtrees below root in place and returns how many nodes were dropped.
+     * Runs bottom-up with an explicit stack, so deep trees are fine.
+     */
+    public static int eliminate(ComputationNode root) {
+        if (root == null) {
+            return 0;
+        }
+        Map<ComputationNode, ComputationNode> canonical = new IdentityHashMap<>();
+        Map<Key, ComputationNode> table = new HashMap<>();
+        int merged = 0;
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.peek();
+            if (canonical.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            List<ComputationNode> children = node.getChildren();
+            boolean childrenDone = true;
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                for (ComputationNode child : children) {
+                    if (!canonical.containsKey(child)) {
+                        stack.push(child);
+                        childrenDone = false;
+                    }
+                }
+            }
+            if (!childrenDone) {
+                continue;
+            }
+            stack.pop();
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                for (int i = 0; i < children.size(); i++) {
+                    ComputationNode canon = canonical.get(children.get(i));
+                    if (canon != children.get(i)) {
+                        node.replaceChild(i, canon);
+                    }
+                }
+            }
+            ComputationNode existing = table.putIfAbsent(new Key(node), node);
+            if (existing == null) {
+                canonical.put(node, node);
+            }
+            else {
+                canonical.put(node, existing);
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    //structural identity of a node whose children are canonical already
+    private static final class Key {
+        private final ComputationNode node;
+        private final int hash;
+
+        Key(ComputationNode node) {
+            this.node = node;
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                this.hash = Objects.hash(node.getNodeType(), node.isTransposed(), Arrays.deepHashCode(node.getStoredMatrix()));
+            }
+            else {
+                int h = 31 * node.getNodeType().hashCode() + Double.hashCode(node.getScale());
+                for (ComputationNode child : node.getChildren()) {
+                    h = 31 * h + System.identityHashCode(child);
+                }
+                this.hash = h;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            ComputationNode other = ((Key) o).node;
+            if (hash != ((Key) o).hash || node.getNodeType() != other.getNodeType()) {
+                return false;
+            }
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                return node.isTransposed() == other.isTransposed()
+                    && Arrays.deepEquals(node.getStoredMatrix(), other.getStoredMatrix());
+            }
+            List<ComputationNode> a = node.getChildren();
+            List<ComputationNode> b = other.getChildren();
+            if (Double.compare(node.getScale(), other.getScale()) != 0 || a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (a.get(i) != b.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package parser;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
 public class ComputationNode {
@@ -7,6 +11,13 @@ public class ComputationNode {
     private ComputationNodeType nodeType;
     private List<ComputationNode> children = null;
     private double[][] matrix = null; // only used for MATRIX nodes
+    private boolean transposed = false; // true when matrix holds the transpose of this node's value
+    private double scale = 1.0; // MULTIPLY only: the product is multiplied by this scalar
+    private int[] shape = null; // rows and columns of this node's value, inferred lazily
+    private boolean shapeInferred = false;
+
+    //chains longer than this are nested left to right, the O(n^3) planning would cost more than it saves
+    private static final int MAX_PLANNED_CHAIN = 500;
 
     public ComputationNode(String operatorStr, List<ComputationNode> children) throws IllegalArgumentException {
         this.nodeType = mapOperator(operatorStr);
@@ -33,6 +44,18 @@ public class ComputationNode {
         this.children = children;
     }
 
+    /**
+     * An operator node whose value is also multiplied by scale; only a MULTIPLY node is scaled.
+     */
+    public ComputationNode(ComputationNodeType nodeType, List<ComputationNode> children, double scale) {
+        if (scale != 1.0 && nodeType != ComputationNodeType.MULTIPLY) {
+            throw new IllegalArgumentException("Only a product can be scaled");
+        }
+        this.nodeType = nodeType;
+        this.children = children;
+        this.scale = scale;
+    }
+
     public ComputationNode(double[][] matrix) {
         this.nodeType = ComputationNodeType.MATRIX;
         this.matrix = matrix;
@@ -46,6 +69,25 @@ public class ComputationNode {
         return children;
     }
 
+    /**
+     * Scalar factor of a MULTIPLY node, set by AlgebraicOptimizer when it folds a negation into the product.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    //used by the rewriting passes of this package; the list may be shared or immutable, so it is copied first
+    void replaceChild(int index, ComputationNode child) {
+        if (!(children instanceof ArrayList)) {
+            children = new ArrayList<>(children);
+        }
+        children.set(index, child);
+    }
+
     /**
      * Recursively finds the first resolvable node in the tree.
      * A resolvable node is defined as a node that is not of type MATRIX,
@@ -71,13 +113,156 @@ public class ComputationNode {
      * are nested in a left-associative manner.
      * For example, A + B + C becomes (A + B) + C.
      * Effectively, this converts n-ary operations (n > 2) into binary operations.
+     * A chain of multiplications is instead parenthesized in the order that needs the fewest
+     * scalar multiplications, when the operand shapes can be inferred; see planMultiplyChain.
      */
     public void associativeNesting() {
-        if (children != null && children.size() > 2) {
-            ComputationNode lastChild = children.remove(children.size() - 1);
-            ComputationNode newNode = new ComputationNode(nodeType, children);
-            children = List.of(newNode, lastChild);
-            newNode.associativeNesting();
+        if (children == null || children.size() <= 2) {
+            return;
+        }
+        if (nodeType == ComputationNodeType.MULTIPLY && planMultiplyChain()) {
+            return;
+        }
+        //built bottom-up in one pass, long operand lists must not recurse once per operand
+        List<ComputationNode> operands = children;
+        ComputationNode nested = new ComputationNode(nodeType, new ArrayList<>(List.of(operands.get(0), operands.get(1))));
+        for (int i = 2; i < operands.size() - 1; i++) {
+            nested = new ComputationNode(nodeType, new ArrayList<>(List.of(nested, operands.get(i))));
+        }
+        children = new ArrayList<>(List.of(nested, operands.get(operands.size() - 1)));
+    }
+
+    /**
+     * Matrix-chain ordering: dynamic programming over the operand shapes picks the split of every
+     * sub-chain with the lowest number of scalar multiplications, and the children are rebuilt as
+     * that binary tree. Returns false, leaving the node untouched, if a shape is unknown, the
+     * shapes do not chain (the engine reports that when it gets there) or the chain is too long.
+     */
+    private boolean planMultiplyChain() {
+        int n = children.size();
+        if (n > MAX_PLANNED_CHAIN) {
+            return false;
+        }
+        //operand i is dims[i] x dims[i + 1]
+        long[] dims = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            int[] s = children.get(i).getShape();
+            if (s == null || (i > 0 && s[0] != dims[i])) {
+                return false;
+            }
+            dims[i] = s[0];
+            dims[i + 1] = s[1];
+        }
+        long[][] cost = new long[n][n];
+        int[][] split = new int[n][n];
+        for (int len = 2; len <= n; len++) {
+            for (int i = 0; i + len - 1 < n; i++) {
+                int j = i + len - 1;
+                cost[i][j] = Long.MAX_VALUE;
+                for (int k = i; k < j; k++) {
+                    long c = cost[i][k] + cost[k + 1][j] + dims[i] * dims[k + 1] * dims[j + 1];
+                    //ties keep the left-nested order
+                    if (c < cost[i][j] || (c == cost[i][j] && k > split[i][j])) {
+                        cost[i][j] = c;
+                        split[i][j] = k;
+                    }
+                }
+            }
+        }
+        int k = split[0][n - 1];
+        List<ComputationNode> operands = children;
+        children = new ArrayList<>(List.of(chain(operands, split, dims, 0, k), chain(operands, split, dims, k + 1, n - 1)));
+        return true;
+    }
+
+    //the planned product of operands[i..j]; recursion depth is bounded by MAX_PLANNED_CHAIN
+    private ComputationNode chain(List<ComputationNode> operands, int[][] split, long[] dims, int i, int j) {
+        if (i == j) {
+            return operands.get(i);
+        }
+        int k = split[i][j];
+        ComputationNode node = new ComputationNode(ComputationNodeType.MULTIPLY,
+                new ArrayList<>(List.of(chain(operands, split, dims, i, k), chain(operands, split, dims, k + 1, j))));
+        node.shape = new int[]{(int) dims[i], (int) dims[j + 1]};
+        node.shapeInferred = true;
+        return node;
+    }
+
+    /**
+     * Returns {rows, cols} of this node's value, inferred from the leaves without computing anything,
+     * or null if the operands do not fit together. Results are cached on every visited node, and the
+     * walk uses an explicit stack so deep trees are fine.
+     */
+    public int[] getShape() {
+        if (shapeInferred) {
+            return shape;
+        }
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.peek();
+            if (node.shapeInferred) {
+                stack.pop();
+                continue;
+            }
+            boolean childrenReady = true;
+            if (node.nodeType != ComputationNodeType.MATRIX) {
+                for (ComputationNode child : node.children) {
+                    if (!child.shapeInferred) {
+                        stack.push(child);
+                        childrenReady = false;
+                    }
+                }
+            }
+            if (childrenReady) {
+                node.shape = node.inferShape();
+                node.shapeInferred = true;
+                stack.pop();
+            }
+        }
+        return shape;
+    }
+
+    //children are inferred already
+    private int[] inferShape() {
+        if (nodeType == ComputationNodeType.MATRIX) {
+            int rows = matrix.length;
+            int cols = rows == 0 ? 0 : matrix[0].length;
+            return transposed ? new int[]{cols, rows} : new int[]{rows, cols};
+        }
+        if (children == null || children.isEmpty()) {
+            return null;
+        }
+        for (ComputationNode child : children) {
+            if (child.shape == null) {
+                return null;
+            }
+        }
+        int[] first = children.get(0).shape;
+        switch (nodeType) {
+            case NEGATE:
+                return first;
+            case TRANSPOSE:
+                return new int[]{first[1], first[0]};
+            case ADD:
+                for (ComputationNode child : children) {
+                    if (!Arrays.equals(child.shape, first)) {
+                        return null;
+                    }
+                }
+                return first;
+            case MULTIPLY:
+                int[] acc = first;
+                for (int i = 1; i < children.size(); i++) {
+                    int[] next = children.get(i).shape;
+                    if (acc[1] != next[0]) {
+                        return null;
+                    }
+                    acc = new int[]{acc[0], next[1]};
+                }
+                return acc;
+            default:
+                return null;
         }
     }
 
@@ -85,17 +270,58 @@ public class ComputationNode {
      * Resolves this node by setting its type to MATRIX and storing the computed matrix.
      */
     public void resolve(double[][] matrix) {
+        resolve(matrix, false);
+    }
+
+    /**
+     * Resolves this node with a matrix that may be stored transposed.
+     * When transposed is true, the rows of the given array are the columns of the result,
+     * and the transpose is only materialized if someone calls getMatrix().
+     */
+    public void resolve(double[][] matrix, boolean transposed) {
         this.nodeType = ComputationNodeType.MATRIX;
         this.children = null;
         this.matrix = matrix;
+        this.transposed = transposed;
     }
 
+    /**
+     * Returns the matrix in row-major form. A node stored transposed returns a new array on every
+     * call and keeps its stored layout, so reading it never changes what other readers see.
+     */
     public double[][] getMatrix() {
+        if (matrix == null) {
+            throw new IllegalStateException("This node does not contain a matrix.");
+        }
+        return transposed ? transposeOf(matrix) : matrix;
+    }
+
+    /**
+     * Returns the matrix exactly as stored, see isTransposed() for how to read it.
+     */
+    public double[][] getStoredMatrix() {
         if (matrix == null) {
             throw new IllegalStateException("This node does not contain a matrix.");
         }
         return matrix;
     }
 
+    public boolean isTransposed() {
+        return transposed;
+    }
+
+    private static double[][] transposeOf(double[][] m) {
+        if (m.length == 0) {
+            return m;
+        }
+        double[][] t = new double[m[0].length][m.length];
+        for (int i = 0; i < m.length; i++) {
+            for (int j = 0; j < m[i].length; j++) {
+                t[j][i] = m[i][j];
+            }
+        }
+        return t;
+    }
+
 
 }
\ No newline at end of file
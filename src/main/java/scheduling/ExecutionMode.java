@@ -0,0 +1,16 @@
+package scheduling;
+
+/**
+ * How a TiredExecutor hands tasks to its workers.
+ */
+public enum ExecutionMode {
+    /** Every task goes through the idle-worker heap and a worker's single-slot handoff; submit blocks while all workers are busy. */
+    HANDOFF,
+    /** Tasks are pushed in bulk onto per-worker deques and idle workers steal from the most loaded peer; submit never blocks. */
+    WORK_STEALING,
+    /**
+     * Every task runs on its own virtual thread. The workers are not started; they act as slots
+     * that cap how many tasks run at once and keep the per-worker statistics for the report.
+     */
+    VIRTUAL
+}
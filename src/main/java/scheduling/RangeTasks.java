@@ -0,0 +1,95 @@
+package scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds tasks that each cover a range of indices instead of a single index.
+ * Ranges follow guided self-scheduling: early ranges are large (a share of what is left per worker)
+ * and they shrink towards the tail, so the last tasks are small enough to even out the load.
+ * No range is smaller than the grain that keeps a task's measured cost above the scheduling overhead.
+ */
+public final class RangeTasks {
+
+    //a task should run at least this long, otherwise handing it to a worker costs more than it saves
+    public static final long TARGET_TASK_NANOS = 50_000;
+
+    //ranges per worker in the first guided round
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    private RangeTasks() {
+    }
+
+    /** Work on the half-open index range [from, to). */
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    /**
+     * Measured cost of one unit of work, kept as an exponentially weighted moving average
+     * so that one slow run (JIT warm-up, a GC pause) does not dominate.
+     */
+    public static final class Cost {
+        private static final double ALPHA = 0.3;
+        private double nanosPerUnit;
+
+        /** @param initialNanosPerUnit estimate used until the first measurement */
+        public Cost(double initialNanosPerUnit) {
+            if (!(initialNanosPerUnit > 0)) {
+                throw new IllegalArgumentException("initial cost must be positive");
+            }
+            this.nanosPerUnit = initialNanosPerUnit;
+        }
+
+        public synchronized double nanosPerUnit() {
+            return nanosPerUnit;
+        }
+
+        public synchronized void record(long units, long nanos) {
+            if (units <= 0) {
+                return;
+            }
+            double sample = Math.max(1e-3, (double) nanos / units);
+            nanosPerUnit = ALPHA * sample + (1 - ALPHA) * nanosPerUnit;
+        }
+    }
+
+    /**
+     * Splits [0, n) into range tasks.
+     *
+     * @param n            number of indices
+     * @param workers      number of workers that will run the tasks
+     * @param unitsPerItem units of work behind one index (e.g. the row length), used with cost
+     * @param maxGrain     upper bound on a range, or Integer.MAX_VALUE for none
+     * @param cost         measured cost per unit; every task feeds its own timing back into it
+     * @param body         the work for one range
+     */
+    public static List<Runnable> split(int n, int workers, long unitsPerItem, int maxGrain, Cost cost, RangeBody body) {
+        if (n < 0 || workers <= 0 || unitsPerItem < 0 || maxGrain <= 0) {
+            throw new IllegalArgumentException("Invalid range split parameters");
+        }
+        if (cost == null || body == null) {
+            throw new IllegalArgumentException("cost and body cannot be null");
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        long units = Math.max(1, unitsPerItem);
+        double itemNanos = cost.nanosPerUnit() * units;
+        int minGrain = (int) Math.min(Math.max(1, maxGrain), Math.max(1, Math.ceil(TARGET_TASK_NANOS / itemNanos)));
+        int from = 0;
+        while (from < n) {
+            int remaining = n - from;
+            int size = (remaining + CHUNKS_PER_WORKER * workers - 1) / (CHUNKS_PER_WORKER * workers);
+            size = Math.min(remaining, Math.min(maxGrain, Math.max(minGrain, size)));
+            final int lo = from;
+            final int hi = from + size;
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                body.run(lo, hi);
+                cost.record((long) (hi - lo) * units, System.nanoTime() - start);
+            });
+            from = hi;
+        }
+        return tasks;
+    }
+}
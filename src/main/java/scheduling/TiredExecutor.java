@@ -1,30 +1,53 @@
 package scheduling;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TiredExecutor {
 
     private final TiredThread[] workers;
+    private final ExecutionMode mode;
     private final PriorityBlockingQueue<TiredThread> idleMinHeap = new PriorityBlockingQueue<>();
     private final AtomicInteger inFlight = new AtomicInteger(0);//how many tasks are currently being executed
+    private final ConcurrentLinkedQueue<Runnable> backlog = new ConcurrentLinkedQueue<>();//handoff mode: async tasks waiting for an idle worker
+    private volatile boolean shutDown = false;
 
     public TiredExecutor(int numThreads) {
+        this(numThreads, ExecutionMode.HANDOFF);
+    }
+
+    public TiredExecutor(int numThreads, ExecutionMode mode) {
         if (numThreads <= 0) {
             throw new IllegalArgumentException("Number of threads must be positive");
         }
+        if (mode == null) {
+            throw new IllegalArgumentException("mode cannot be null");
+        }
+        this.mode = mode;
         this.workers = new TiredThread[numThreads];
         for (int i = 0; i < numThreads; i++) {
            double fatigue = 0.5 + java.util.concurrent.ThreadLocalRandom.current().nextDouble(1.0);
            TiredThread w = new TiredThread(i, fatigue);
            workers[i] = w;
-           w.start();
+           if (mode != ExecutionMode.VIRTUAL) {
+               w.start();
+           }
            idleMinHeap.add(w);
         }
+        for (TiredThread w : workers) {
+            w.setPeers(workers);
+        }
+    }
 
-      
+    public ExecutionMode getMode() {
+        return mode;
     }
 
     // Submit a single task to be executed by an idle worker. If no idle workers are available,this method blocks until one becomes available.
@@ -32,6 +55,10 @@ public class TiredExecutor {
         if (task == null) {
             throw new IllegalArgumentException("Task cannot be null");
         }
+        if (mode == ExecutionMode.WORK_STEALING) {
+            pushOne(tracked(task, null));
+            return;
+        }
         while (true) {
             final TiredThread w;
             try {
@@ -41,49 +68,269 @@ public class TiredExecutor {
                 Thread.currentThread().interrupt();
                 return;
             }
-            inFlight.incrementAndGet();
-            Runnable wrapped = () -> { 
-                try {task.run();}
-                finally {
-                    idleMinHeap.offer(w);
-                    inFlight.decrementAndGet();
-                    synchronized (TiredExecutor.this) { 
-                        TiredExecutor.this.notifyAll();
-                    }
-                }
-            };
+            Runnable wrapped = tracked(task, null);
             try {
-                w.newTask(wrapped);//assign the task to the worker
+                dispatch(w, wrapped);//assign the task to the worker
                 return;
                 }
             catch (IllegalStateException ex) {
                 idleMinHeap.offer(w);
-                inFlight.decrementAndGet();
+                finishOne();
             }
         }
     }
-            
-    public void submitAll(Iterable<Runnable> tasks) {
+
+    /**
+     * Submits a task without blocking. If no worker is idle the task waits in the backlog
+     * and the next worker to finish picks it up. The future completes when the task has run,
+     * exceptionally if it threw.
+     */
+    public CompletableFuture<Void> submitAsync(Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        return submitAllAsync(List.of(task));
+    }
+
+    /**
+     * Submits a batch without blocking. The returned handle completes when the tasks of this
+     * batch are done, regardless of anything else running on the pool; if some of them threw,
+     * it completes exceptionally with the first failure once the rest have finished.
+     */
+    public CompletableFuture<Void> submitAllAsync(Iterable<Runnable> tasks) {
         if (tasks == null) {
             throw new IllegalArgumentException("tasks cannot be null");
         }
+        if (shutDown) {
+            throw new IllegalStateException("Executor is shut down");
+        }
+        List<Runnable> raw = new ArrayList<>();
         for (Runnable task : tasks) {
-            submit(task);
+            if (task == null) {
+                throw new IllegalArgumentException("Task cannot be null");
+            }
+            raw.add(task);
+        }
+        Batch batch = new Batch(raw.size());
+        if (raw.isEmpty()) {
+            return batch.future;
+        }
+        List<Runnable> wrapped = new ArrayList<>(raw.size());
+        for (Runnable task : raw) {
+            wrapped.add(tracked(task, batch));
+        }
+        if (mode == ExecutionMode.WORK_STEALING) {
+            pushAll(wrapped);
+        }
+        else {
+            backlog.addAll(wrapped);
+            drainBacklog();
         }
-        synchronized (this) {
-            while (inFlight.get() != 0) {
+        return batch.future;
+    }
+
+    //runs the batch and waits for it; a failed task is rethrown here
+    public void submitAll(Iterable<Runnable> tasks) {
+        CompletableFuture<Void> batch = submitAllAsync(tasks);
+        try {
+            batch.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for tasks to finish", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    //completion of one submitted group of tasks
+    private static final class Batch {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Batch(int size) {
+            this.remaining = new AtomicInteger(size);
+            if (size == 0) {
+                future.complete(null);
+            }
+        }
+
+        void taskDone(Throwable t) {
+            if (t != null) {
+                failure.compareAndSet(null, t);
+            }
+            if (remaining.decrementAndGet() == 0) {
+                Throwable first = failure.get();
+                if (first == null) {
+                    future.complete(null);
+                }
+                else {
+                    future.completeExceptionally(first);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the task as in flight until it has run.
+     * With a batch, a failure is reported through the batch's future; without one it is rethrown
+     * on the worker like before.
+     */
+    private Runnable tracked(Runnable task, Batch batch) {
+        inFlight.incrementAndGet();
+        return () -> {
+            Throwable failure = null;
+            try {
+                task.run();
+            }
+            catch (RuntimeException | Error e) {
+                failure = e;
+                if (batch == null || e instanceof Error) {
+                    throw e;
+                }
+            }
+            finally {
+                finishOne();
+                if (batch != null) {
+                    batch.taskDone(failure);
+                }
+            }
+        };
+    }
+
+    //only shutdown waits on the monitor, and only for the pool to drain completely
+    private void finishOne() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (this) {
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Starts a task on a worker taken from the idle heap: through its handoff slot, or in virtual
+     * mode on a new virtual thread that books the time on the worker.
+     * Once the task is done the worker goes back to the heap and looks at the backlog.
+     */
+    private void dispatch(TiredThread w, Runnable task) {
+        if (mode == ExecutionMode.VIRTUAL) {
+            Thread.ofVirtual().name("lae-virtual-" + w.getWorkerId()).start(() -> {
                 try {
-                    this.wait();// puts the calling thread (the Main thread) into a "Waiting" state. It releases the lock and stays idle, consuming no CPU power, while the workers do the math.
-                } 
-                catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Interrupted while waiting for tasks to finish", e);
+                    w.runTask(task);
+                }
+                finally {
+                    release(w);
                 }
+            });
+            return;
+        }
+        w.newTask(() -> {
+            try {task.run();}
+            finally {
+                release(w);
+            }
+        });
+    }
+
+    private void release(TiredThread w) {
+        idleMinHeap.offer(w);
+        drainBacklog();
+    }
+
+    /**
+     * Hands backlog tasks to idle workers. Called after every enqueue and every time a worker
+     * frees up: a worker that goes idle is in the heap before it checks the backlog, and a task
+     * is in the backlog before its submitter checks the heap, so one of them always sees the other.
+     */
+    private void drainBacklog() {
+        while (!backlog.isEmpty()) {
+            TiredThread w = idleMinHeap.poll();
+            if (w == null) {
+                return;
+            }
+            Runnable task = backlog.poll();
+            if (task == null) {
+                idleMinHeap.offer(w);//someone else took it, check again
+                continue;
+            }
+            try {
+                dispatch(w, task);
+            }
+            catch (IllegalStateException ex) {
+                //the worker is shutting down
+                backlog.add(task);
+                return;
+            }
+        }
+    }
+
+    //work-stealing mode: a single task goes to the least loaded worker, ties go to the less tired one
+    private void pushOne(Runnable task) {
+        TiredThread target = workers[0];
+        for (TiredThread w : workers) {
+            int diff = w.getQueuedTasks() - target.getQueuedTasks();
+            if (diff < 0 || (diff == 0 && w.compareTo(target) < 0)) {
+                target = w;
+            }
+        }
+        target.pushTasks(List.of(task));
+    }
+
+    /**
+     * Work-stealing mode: splits the batch into contiguous slices, one per worker, and pushes
+     * each slice onto that worker's deque in a single call. Less tired workers get larger slices;
+     * whatever imbalance is left is evened out by stealing.
+     */
+    private void pushAll(List<Runnable> all) {
+        //snapshot fatigue so the sort sees stable keys while workers keep running
+        int n = workers.length;
+        double[] fatigue = new double[n];
+        Integer[] idx = new Integer[n];
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            fatigue[i] = workers[i].getFatigue();
+            idx[i] = i;
+            mean += fatigue[i];
+        }
+        Arrays.sort(idx, (a, b) -> Double.compare(fatigue[a], fatigue[b]));//least tired first
+        mean = mean / n + 1e-9;
+        TiredThread[] order = new TiredThread[n];
+        double[] weight = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            order[i] = workers[idx[i]];
+            weight[i] = 1.0 / (1.0 + fatigue[idx[i]] / mean);
+            total += weight[i];
+        }
+        int from = 0;
+        double acc = 0;
+        for (int i = 0; i < order.length && from < all.size(); i++) {
+            acc += weight[i];
+            int to = (i == order.length - 1) ? all.size() : (int) Math.round(all.size() * acc / total);
+            if (to > from) {
+                order[i].pushTasks(all.subList(from, to));
+                from = to;
+            }
+        }
+        //idle workers that got nothing should come and steal
+        for (TiredThread w : workers) {
+            if (w.getQueuedTasks() == 0) {
+                w.wake();
             }
         }
     }
 
     public void shutdown() throws InterruptedException {
+       shutDown = true;
        synchronized (this) {
             while (inFlight.get() != 0) {//wait for all tasks to finish
               this.wait();
@@ -100,12 +347,17 @@ public class TiredExecutor {
     public synchronized String getWorkerReport() {
         StringBuilder sb = new StringBuilder();
         sb.append("=== TiredExecutor Worker Report ===\n");
+        sb.append("mode = ").append(mode).append("\n");
         sb.append("inFlight = ").append(inFlight.get()).append("\n\n");
         
         for (TiredThread w : workers) {
             sb.append("Worker #").append(w.getWorkerId()).append(" | busy=").append(w.isBusy())
             .append(" | fatigue=").append(String.format("%.3f", w.getFatigue())).append(" | timeUsed=").append(w.getTimeUsed())
-            .append(" | timeIdle=").append(w.getTimeIdle()).append("\n");
+            .append(" | timeIdle=").append(w.getTimeIdle());
+            if (mode == ExecutionMode.WORK_STEALING) {
+                sb.append(" | queued=").append(w.getQueuedTasks());
+            }
+            sb.append("\n");
         }
         return sb.toString();
     }
@@ -1,13 +1,17 @@
 package scheduling;
 
+import java.util.Collection;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class TiredThread extends Thread implements Comparable<TiredThread> {
 
     private static final Runnable POISON_PILL = () -> {}; // Special task to signal shutdown
+    private static final Runnable WAKE_UP = () -> {}; // Wakes an idle worker so it looks at the deques again
 
     private final int id; // Worker index assigned by the executor
     private final double fatigueFactor; // Multiplier for fatigue calculation
@@ -17,6 +21,11 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
     // Single-slot handoff queue; executor will put tasks here
     private final BlockingQueue<Runnable> handoff = new ArrayBlockingQueue<>(1);
 
+    // Work-stealing mode: own tasks are taken from the head, thieves take from the tail
+    private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger queued = new AtomicInteger(0); // size of deque, ConcurrentLinkedDeque.size() is O(n)
+    private volatile TiredThread[] peers = new TiredThread[0]; // workers this one may steal from
+
     private final AtomicBoolean busy = new AtomicBoolean(false); // Indicates if the worker is currently executing a task
 
     private final AtomicLong timeUsed = new AtomicLong(0); // Total time spent executing tasks
@@ -68,32 +77,138 @@ public class TiredThread extends Thread implements Comparable<TiredThread> {
         }
     }
 
+    /**
+     * Work-stealing mode: appends tasks to this worker's deque and wakes it up.
+     * Never blocks and never rejects while the worker is alive.
+     */
+    public void pushTasks(Collection<Runnable> tasks) {
+        if (!alive.get()) {
+            throw new IllegalStateException("Worker is shut down");
+        }
+        deque.addAll(tasks);
+        queued.addAndGet(tasks.size());
+        wake();
+    }
+
+    //if the slot is already taken the worker has something to wake up for anyway
+    void wake() {
+        handoff.offer(WAKE_UP);
+    }
+
+    void setPeers(TiredThread[] peers) {
+        this.peers = peers;
+    }
+
+    public int getQueuedTasks() {
+        return queued.get();
+    }
+
+    private Runnable pollOwn() {
+        Runnable task = deque.pollFirst();
+        if (task != null) {
+            queued.decrementAndGet();
+        }
+        return task;
+    }
+
+    private Runnable stealFrom() {
+        Runnable task = deque.pollLast();
+        if (task != null) {
+            queued.decrementAndGet();
+        }
+        return task;
+    }
+
+    //own deque first, then the tail of the most loaded peer
+    private Runnable nextQueuedTask() {
+        Runnable task = pollOwn();
+        while (task == null) {
+            TiredThread victim = null;
+            int most = 0;
+            for (TiredThread p : peers) {
+                int n = p.queued.get();
+                if (p != this && n > most) {
+                    most = n;
+                    victim = p;
+                }
+            }
+            if (victim == null) {
+                return null;
+            }
+            task = victim.stealFrom();
+        }
+        return task;
+    }
+
+    /**
+     * Runs a task on the calling thread with the same bookkeeping as the worker loop.
+     * In virtual mode this worker is never started and only serves as a slot, so the time
+     * between two tasks counts as idle time.
+     */
+    void runTask(Runnable task) {
+        long start = System.nanoTime();
+        timeIdle.addAndGet(start - idleStartTime.get());
+        busy.set(true);
+        try {
+            task.run();
+        }
+        catch (RuntimeException e) {
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+        finally {
+            long end = System.nanoTime();
+            timeUsed.addAndGet(end - start);
+            busy.set(false);
+            idleStartTime.set(end);
+        }
+    }
+
     /**
      * Request this worker to stop after finishing current task.
      * Inserts a poison pill so the worker wakes up and exits.
      */
     public void shutdown() {
        alive.set(false);
-       handoff.offer(POISON_PILL);
+       //a pending wake-up must not keep the pill out of the slot
+       while (!handoff.offer(POISON_PILL) && handoff.remove(WAKE_UP)) {
+       }
     }
 
     @Override
     public void run() {
         while (true) {
             try {
-                idleStartTime.set(System.nanoTime());
-                Runnable task = handoff.take();
-                long now = System.nanoTime();
-                long idleStart = idleStartTime.get();
-                timeIdle.addAndGet(now - idleStart);
+                //a direct handoff or the poison pill comes first, then queued work
+                Runnable task = handoff.poll();
                 if (task == POISON_PILL){
                     break;
                 }
+                if (task == null || task == WAKE_UP) {
+                    task = nextQueuedTask();
+                }
+                if (task == null) {
+                    idleStartTime.set(System.nanoTime());
+                    task = handoff.take();
+                    long now = System.nanoTime();
+                    long idleStart = idleStartTime.get();
+                    timeIdle.addAndGet(now - idleStart);
+                    if (task == POISON_PILL){
+                        break;
+                    }
+                    if (task == WAKE_UP) {
+                        continue;
+                    }
+                }
                 busy.set(true);
                 long start = System.nanoTime();
                 try {
                     task.run();
                 }
+                catch (RuntimeException e) {
+                    //a failing task must not take the worker down with it
+                    getUncaughtExceptionHandler().uncaughtException(this, e);
+                }
                 finally {
                     long end = System.nanoTime();
                     timeUsed.addAndGet(end - start);
@@ -0,0 +1,182 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One-time dependency graph over the operator nodes of a computation tree.
+ * Every operator keeps a counter of children that are not resolved yet and the list of its
+ * parents, so completing a node releases exactly the parents that became ready.
+ * Building and draining the graph costs O(n) for n nodes, and nothing is recursive,
+ * so very deep trees (long sums after associative nesting) are fine.
+ * Nodes may be shared (see parser.CommonSubexpressions): the graph also counts how many times
+ * every operator is used as an operand, so the engine knows how long its result is read. Leaves are
+ * not counted, they belong to the caller and are never written or recycled.
+ * Chains of ADD, NEGATE and TRANSPOSE are fused while the graph is built: their root becomes one
+ * node whose operands are the terms of the whole chain (see fusedTerms), the inner nodes are never
+ * scheduled, and the engine evaluates the chain in one pass over memory.
+ * Not thread safe: the engine updates it from the thread that runs the scheduling loop.
+ */
+final class DependencyGraph {
+
+    private final Map<ComputationNode, Integer> pending = new IdentityHashMap<>();
+    private final Map<ComputationNode, List<ComputationNode>> parents = new IdentityHashMap<>();
+    private final List<ComputationNode> ready = new ArrayList<>();
+    private final Map<ComputationNode, Integer> consumers = new IdentityHashMap<>();
+    private final Map<ComputationNode, List<FusedTerm>> fused = new IdentityHashMap<>();
+
+    private DependencyGraph() {
+    }
+
+    static DependencyGraph of(ComputationNode root) {
+        return of(root, Set.of());
+    }
+
+    /**
+     * @param owned resolved nodes whose arrays the engine owns (results loaded from a cache); unlike
+     *              the caller's leaves their uses are counted
+     */
+    static DependencyGraph of(ComputationNode root, Set<ComputationNode> owned) {
+        DependencyGraph graph = new DependencyGraph();
+        Map<ComputationNode, Integer> uses = countUses(root);
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            //a node reachable from several parents is counted once
+            if (node.getNodeType() == ComputationNodeType.MATRIX || graph.pending.containsKey(node)) {
+                continue;
+            }
+            List<ComputationNode> operands = node.getChildren();
+            List<FusedTerm> terms = fuse(node, uses);
+            if (terms != null) {
+                graph.fused.put(node, terms);
+                operands = new ArrayList<>(terms.size());
+                for (FusedTerm term : terms) {
+                    operands.add(term.operand);
+                }
+            }
+            int waiting = 0;
+            for (ComputationNode child : operands) {
+                if (child.getNodeType() != ComputationNodeType.MATRIX || owned.contains(child)) {
+                    graph.consumers.merge(child, 1, Integer::sum);
+                }
+                if (child.getNodeType() != ComputationNodeType.MATRIX) {
+                    waiting++;
+                    graph.parents.computeIfAbsent(child, c -> new ArrayList<>()).add(node);
+                    stack.push(child);
+                }
+            }
+            graph.pending.put(node, waiting);
+            if (waiting == 0) {
+                graph.ready.add(node);
+            }
+        }
+        return graph;
+    }
+
+    //how many parents every node has, a node with a single one may be absorbed into its parent's chain
+    private static Map<ComputationNode, Integer> countUses(ComputationNode root) {
+        Map<ComputationNode, Integer> uses = new IdentityHashMap<>();
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        uses.put(root, 0);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                continue;
+            }
+            for (ComputationNode child : node.getChildren()) {
+                if (uses.merge(child, 1, Integer::sum) == 1) {
+                    stack.push(child);
+                }
+            }
+        }
+        return uses;
+    }
+
+    /**
+     * The terms of the element-wise chain rooted at node, left to right, or null when there is
+     * nothing to fuse. The chain starts at an ADD or NEGATE and absorbs every ADD, NEGATE and
+     * TRANSPOSE below it that has no other parent; a lone binary ADD or NEGATE is left as is
+     * (so the sparse kernels still see binary sums), and so is a lone TRANSPOSE, which costs nothing.
+     */
+    private static List<FusedTerm> fuse(ComputationNode node, Map<ComputationNode, Integer> uses) {
+        ComputationNodeType type = node.getNodeType();
+        if (type != ComputationNodeType.ADD && type != ComputationNodeType.NEGATE) {
+            return null;
+        }
+        List<FusedTerm> terms = new ArrayList<>();
+        int absorbed = 0;
+        Deque<FusedTerm> stack = new ArrayDeque<>();
+        stack.push(new FusedTerm(node, 1.0, false));
+        while (!stack.isEmpty()) {
+            FusedTerm t = stack.pop();
+            ComputationNode n = t.operand;
+            if (n != node && !(isElementwise(n) && uses.get(n) == 1)) {
+                terms.add(t);
+                continue;
+            }
+            if (n != node) {
+                absorbed++;
+            }
+            double sign = n.getNodeType() == ComputationNodeType.NEGATE ? -t.sign : t.sign;
+            boolean transposed = n.getNodeType() == ComputationNodeType.TRANSPOSE ? !t.transposed : t.transposed;
+            List<ComputationNode> children = n.getChildren();
+            //pushed in reverse so the terms come out in the written order, which keeps the summation order
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(new FusedTerm(children.get(i), sign, transposed));
+            }
+        }
+        return absorbed > 0 || terms.size() > 2 ? terms : null;
+    }
+
+    private static boolean isElementwise(ComputationNode node) {
+        ComputationNodeType type = node.getNodeType();
+        return type == ComputationNodeType.ADD || type == ComputationNodeType.NEGATE || type == ComputationNodeType.TRANSPOSE;
+    }
+
+    /**
+     * The terms node sums when it is the root of a fused chain, or null for a node evaluated on its own.
+     * The operands of a fused node are the operands of its terms, not its children.
+     */
+    List<FusedTerm> fusedTerms(ComputationNode node) {
+        return fused.get(node);
+    }
+
+    //operators whose children are all resolved already
+    List<ComputationNode> initiallyReady() {
+        return ready;
+    }
+
+    //how many operand positions read the result of node, one per term for a fused parent; 0 for the root
+    int consumers(ComputationNode node) {
+        return consumers.getOrDefault(node, 0);
+    }
+
+    /**
+     * Marks node as resolved and returns the parents that have no pending children left.
+     */
+    List<ComputationNode> complete(ComputationNode node) {
+        List<ComputationNode> waiting = parents.get(node);
+        if (waiting == null) {
+            return List.of();
+        }
+        List<ComputationNode> released = new ArrayList<>();
+        for (ComputationNode parent : waiting) {
+            int left = pending.merge(parent, -1, Integer::sum);
+            if (left == 0) {
+                released.add(parent);
+            }
+        }
+        return released;
+    }
+}
@@ -0,0 +1,19 @@
+package spl.lae;
+
+import parser.ComputationNode;
+
+/**
+ * One operand of a fused element-wise chain: sign * operand, or sign * T(operand) when transposed.
+ * The operand is a node the chain does not absorb (a matrix, a product, or a shared node).
+ */
+final class FusedTerm {
+    final ComputationNode operand;
+    final double sign;
+    final boolean transposed;
+
+    FusedTerm(ComputationNode operand, double sign, boolean transposed) {
+        this.operand = operand;
+        this.sign = sign;
+        this.transposed = transposed;
+    }
+}
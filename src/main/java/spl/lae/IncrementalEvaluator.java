@@ -0,0 +1,403 @@
+package spl.lae;
+
+import memory.SparseMatrix;
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps a computation tree and the value of every one of its nodes, so that after a leaf changes
+ * only the ancestors of that leaf are recomputed.
+ * The tree itself is never resolved or modified: every node is evaluated on the engine as a
+ * one-level tree over copies of its operands' values. Values are never written after they are
+ * stored, a change produces new arrays, so values may be shared between nodes (a transpose shares
+ * its child's arrays) and handed to products as is.
+ * Where it is cheaper, a product is updated instead of recomputed: with one operand changed by a
+ * sparse or low-rank delta, A*(B + dB) is the stored A*B plus A*dB. Deltas pass through sums,
+ * negations and transposes symbolically.
+ * Not thread safe: updates must come from one thread at a time.
+ */
+public class IncrementalEvaluator {
+
+    //deltas with at most this fraction of nonzeros go through the engine's sparse kernels, as operands do
+    private static final double SPARSE_DELTA_DENSITY = 0.1;
+
+    private final LinearAlgebraEngine engine;
+    private final ComputationNode root;
+    private final Map<ComputationNode, ComputationNode> values = new IdentityHashMap<>();
+    private final Map<ComputationNode, List<ComputationNode>> parents = new IdentityHashMap<>();
+    private final Map<ComputationNode, Integer> position = new IdentityHashMap<>(); //topological index
+    private long recomputed = 0;
+    private long deltaUpdates = 0;
+
+    /**
+     * A change of a value, factor * dense or factor * u * T(v), read transposed when transposed is set.
+     */
+    private static final class Delta {
+        final double[][] dense;
+        final double[][] u;
+        final double[][] v;
+        final boolean transposed;
+        final double factor;
+
+        private Delta(double[][] dense, double[][] u, double[][] v, boolean transposed, double factor) {
+            this.dense = dense;
+            this.u = u;
+            this.v = v;
+            this.transposed = transposed;
+            this.factor = factor;
+        }
+
+        static Delta dense(double[][] d) {
+            return new Delta(d, null, null, false, 1.0);
+        }
+
+        static Delta lowRank(double[][] u, double[][] v, double factor) {
+            return new Delta(null, u, v, false, factor);
+        }
+
+        boolean isLowRank() {
+            return dense == null;
+        }
+
+        Delta transpose() {
+            //T(u * T(v)) = v * T(u)
+            return isLowRank() ? new Delta(null, v, u, false, factor) : new Delta(dense, null, null, !transposed, factor);
+        }
+
+        Delta times(double f) {
+            return new Delta(dense, u, v, transposed, factor * f);
+        }
+    }
+
+    /**
+     * Evaluates the whole tree once and keeps every intermediate value.
+     * The leaves are copied, later changes to the caller's arrays have no effect; use updateLeaf.
+     */
+    public IncrementalEvaluator(LinearAlgebraEngine engine, ComputationNode root) {
+        if (engine == null || root == null) {
+            throw new IllegalArgumentException("engine and root cannot be null");
+        }
+        this.engine = engine;
+        this.root = root;
+        List<ComputationNode> order = topologicalOrder(root);
+        for (ComputationNode node : order) {
+            position.put(node, position.size());
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                values.put(node, holder(copy(node.getStoredMatrix()), node.isTransposed()));
+            }
+            else {
+                values.put(node, recompute(node));
+            }
+        }
+    }
+
+    //children before parents, every node once, also when it is shared
+    private List<ComputationNode> topologicalOrder(ComputationNode root) {
+        List<ComputationNode> order = new ArrayList<>();
+        Map<ComputationNode, Boolean> done = new IdentityHashMap<>();
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.peek();
+            if (done.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            boolean childrenDone = true;
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                for (ComputationNode child : node.getChildren()) {
+                    if (!done.containsKey(child)) {
+                        stack.push(child);
+                        childrenDone = false;
+                    }
+                }
+            }
+            if (!childrenDone) {
+                continue;
+            }
+            stack.pop();
+            done.put(node, true);
+            order.add(node);
+            if (node.getNodeType() != ComputationNodeType.MATRIX) {
+                for (ComputationNode child : node.getChildren()) {
+                    parents.computeIfAbsent(child, c -> new ArrayList<>()).add(node);
+                }
+            }
+        }
+        return order;
+    }
+
+    /** A copy of the current value of the root. */
+    public double[][] getResult() {
+        return logical(values.get(root), true);
+    }
+
+    /**
+     * Replaces the value of leaf, a matrix node of the tree, and recomputes its ancestors.
+     * Returns the new value of the root, as getResult does.
+     */
+    public double[][] updateLeaf(ComputationNode leaf, double[][] matrix) {
+        ComputationNode old = checkLeaf(leaf);
+        double[][] next = copy(matrix);
+        double[][] current = logical(old, false);
+        checkShape(current, next.length, next.length == 0 ? 0 : next[0].length);
+        double[][] d = new double[next.length][];
+        for (int i = 0; i < next.length; i++) {
+            if (next[i].length != current[i].length) {
+                throw new IllegalArgumentException("Updated matrix must keep the shape of the leaf");
+            }
+            d[i] = new double[next[i].length];
+            for (int j = 0; j < d[i].length; j++) {
+                d[i][j] = next[i][j] - current[i][j];
+            }
+        }
+        values.put(leaf, holder(next, false));
+        propagate(leaf, Delta.dense(d));
+        return getResult();
+    }
+
+    /**
+     * Adds u * T(v) to the value of leaf and recomputes its ancestors; u has the rows of the leaf,
+     * v its columns, and both the same number k of columns (the rank of the change).
+     * Products above the leaf are then updated in O(k) passes instead of being recomputed.
+     * Returns the new value of the root, as getResult does.
+     */
+    public double[][] updateLeafLowRank(ComputationNode leaf, double[][] u, double[][] v) {
+        ComputationNode old = checkLeaf(leaf);
+        if (u == null || v == null || u.length == 0 || v.length == 0 || u[0].length != v[0].length) {
+            throw new IllegalArgumentException("u and v must have the same number of columns");
+        }
+        double[][] current = logical(old, false);
+        checkShape(current, u.length, v.length);
+        Delta delta = Delta.lowRank(copy(u), copy(v), 1.0);
+        values.put(leaf, apply(old, delta));
+        propagate(leaf, delta);
+        return getResult();
+    }
+
+    public long getRecomputedCount() {
+        return recomputed;
+    }
+
+    public long getDeltaUpdateCount() {
+        return deltaUpdates;
+    }
+
+    private ComputationNode checkLeaf(ComputationNode leaf) {
+        ComputationNode value = values.get(leaf);
+        if (value == null || leaf.getNodeType() != ComputationNodeType.MATRIX) {
+            throw new IllegalArgumentException("Not a leaf of this tree");
+        }
+        return value;
+    }
+
+    private static void checkShape(double[][] current, int rows, int cols) {
+        int currentCols = current.length == 0 ? 0 : current[0].length;
+        if (current.length != rows || currentCols != cols) {
+            throw new IllegalArgumentException("Updated matrix must keep the shape of the leaf");
+        }
+    }
+
+    /**
+     * Recomputes the ancestors of changed in topological order; each one is visited once,
+     * after all of its changed children, with null standing for a change without a usable delta.
+     */
+    private void propagate(ComputationNode changed, Delta delta) {
+        Map<ComputationNode, Delta> deltas = new IdentityHashMap<>();
+        Map<ComputationNode, Boolean> queued = new IdentityHashMap<>();
+        PriorityQueue<ComputationNode> next = new PriorityQueue<>((a, b) -> Integer.compare(position.get(a), position.get(b)));
+        deltas.put(changed, delta);
+        enqueueParents(changed, next, queued);
+        while (!next.isEmpty()) {
+            ComputationNode node = next.poll();
+            Delta d = update(node, deltas);
+            deltas.put(node, d);
+            enqueueParents(node, next, queued);
+        }
+    }
+
+    private void enqueueParents(ComputationNode node, PriorityQueue<ComputationNode> next, Map<ComputationNode, Boolean> queued) {
+        for (ComputationNode parent : parents.getOrDefault(node, List.of())) {
+            if (queued.put(parent, true) == null) {
+                next.add(parent);
+            }
+        }
+    }
+
+    //brings the value of node up to date with its changed children and returns its own delta
+    private Delta update(ComputationNode node, Map<ComputationNode, Delta> deltas) {
+        List<ComputationNode> children = node.getChildren();
+        //the delta of node in terms of its children, when there is exactly one changed child
+        ComputationNode changedChild = null;
+        int uses = 0;
+        boolean several = false;
+        for (ComputationNode child : children) {
+            if (deltas.containsKey(child)) {
+                if (changedChild != null && changedChild != child) {
+                    several = true;
+                }
+                changedChild = child;
+                uses++;
+            }
+        }
+        Delta d = several ? null : deltas.get(changedChild);
+        switch (node.getNodeType()) {
+            case TRANSPOSE:
+                values.put(node, recompute(node));
+                return d == null ? null : d.transpose();
+            case NEGATE:
+                values.put(node, recompute(node));
+                return d == null ? null : d.times(-1);
+            case ADD:
+                values.put(node, recompute(node));
+                //a child used twice changes the sum twice
+                return d == null ? null : d.times(uses);
+            case MULTIPLY:
+                if (d != null && uses == 1 && children.size() == 2 && worthDelta(d, values.get(changedChild))) {
+                    Delta product = productDelta(node, children.indexOf(changedChild) == 0, d);
+                    values.put(node, apply(values.get(node), product));
+                    deltaUpdates++;
+                    return product;
+                }
+                values.put(node, recompute(node));
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + node.getNodeType());
+        }
+    }
+
+    //a delta product beats recomputing when the delta is sparse, or of low rank next to its shape
+    private static boolean worthDelta(Delta d, ComputationNode changedValue) {
+        if (!d.isLowRank()) {
+            return SparseMatrix.isSparse(d.dense, SPARSE_DELTA_DENSITY);
+        }
+        double[][] stored = changedValue.getStoredMatrix();
+        long rows = stored.length;
+        long cols = rows == 0 ? 0 : stored[0].length;
+        return (long) d.u[0].length * (rows + cols) < rows * cols;
+    }
+
+    /**
+     * The change of node = scale * L * R when L (leftChanged) or R changed by d.
+     * For a low-rank d the result stays low rank: L * u * T(v) = (L * u) * T(v) and
+     * u * T(v) * R = u * T(T(R) * v).
+     */
+    private Delta productDelta(ComputationNode node, boolean leftChanged, Delta d) {
+        ComputationNode left = values.get(node.getChildren().get(0));
+        ComputationNode right = values.get(node.getChildren().get(1));
+        double factor = d.factor * node.getScale();
+        if (d.isLowRank()) {
+            if (leftChanged) {
+                ComputationNode rightT = holder(right.getStoredMatrix(), !right.isTransposed());
+                return Delta.lowRank(d.u, logical(multiply(rightT, holder(d.v, false)), false), factor);
+            }
+            return Delta.lowRank(logical(multiply(left, holder(d.u, false)), false), d.v, factor);
+        }
+        //the factor is applied by the engine as the scale of the product, the delta needs no extra pass
+        ComputationNode dv = holder(d.dense, d.transposed);
+        ComputationNode product = leftChanged ? multiply(dv, right, factor) : multiply(left, dv, factor);
+        return new Delta(product.getStoredMatrix(), null, null, product.isTransposed(), 1.0);
+    }
+
+    //value + d as a new value, summed by the engine
+    private ComputationNode apply(ComputationNode value, Delta d) {
+        ComputationNode change;
+        if (d.isLowRank()) {
+            change = multiply(holder(d.u, false), holder(d.v, true), d.factor);
+        }
+        else if (d.factor == 1.0) {
+            change = holder(d.dense, d.transposed);
+        }
+        else {
+            change = holder(d.dense, d.transposed, d.factor);
+        }
+        //both holders are leaves of the sub-run, the engine copies the one it writes the sum into
+        List<ComputationNode> operands = new ArrayList<>(List.of(holder(value.getStoredMatrix(), value.isTransposed()), change));
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, operands);
+        engine.run(sum);
+        return sum;
+    }
+
+    //node evaluated from the current values of its children, as a new value
+    private ComputationNode recompute(ComputationNode node) {
+        recomputed++;
+        List<ComputationNode> children = node.getChildren();
+        if (node.getNodeType() == ComputationNodeType.TRANSPOSE) {
+            //metadata only, the arrays are shared since values are never written
+            ComputationNode child = values.get(children.get(0));
+            return holder(child.getStoredMatrix(), !child.isTransposed());
+        }
+        List<ComputationNode> operands = new ArrayList<>(children.size());
+        for (ComputationNode child : children) {
+            ComputationNode value = values.get(child);
+            //the holders are leaves of the sub-run, so the engine copies one before it would write into it
+            operands.add(holder(value.getStoredMatrix(), value.isTransposed()));
+        }
+        ComputationNode result = new ComputationNode(node.getNodeType(), operands, node.getScale());
+        engine.run(result);
+        return result;
+    }
+
+    private ComputationNode multiply(ComputationNode left, ComputationNode right) {
+        return multiply(left, right, 1.0);
+    }
+
+    private ComputationNode multiply(ComputationNode left, ComputationNode right, double scale) {
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(left, right)), scale);
+        engine.run(product);
+        return product;
+    }
+
+    private static ComputationNode holder(double[][] stored, boolean transposed) {
+        ComputationNode node = new ComputationNode(stored);
+        node.resolve(stored, transposed);
+        return node;
+    }
+
+    private static ComputationNode holder(double[][] m, boolean transposed, double scale) {
+        double[][] scaled = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            scaled[i] = new double[m[i].length];
+            for (int j = 0; j < m[i].length; j++) {
+                scaled[i][j] = scale * m[i][j];
+            }
+        }
+        return holder(scaled, transposed);
+    }
+
+    /**
+     * The value of holder in row-major order. A stored row-major value is returned as is unless
+     * copy is set; a transposed one is always rearranged into new arrays.
+     */
+    private static double[][] logical(ComputationNode holder, boolean copy) {
+        double[][] stored = holder.getStoredMatrix();
+        if (!holder.isTransposed()) {
+            return copy ? copy(stored) : stored;
+        }
+        int cols = stored.length;
+        int rows = cols == 0 ? 0 : stored[0].length;
+        double[][] m = new double[rows][cols];
+        for (int j = 0; j < cols; j++) {
+            for (int i = 0; i < rows; i++) {
+                m[i][j] = stored[j][i];
+            }
+        }
+        return m;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            c[i] = m[i].clone();
+        }
+        return c;
+    }
+}
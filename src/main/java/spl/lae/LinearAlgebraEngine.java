@@ -4,139 +4,705 @@ import parser.*;
 import memory.*;
 import scheduling.*;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
-public class LinearAlgebraEngine {
+/**
+ * Evaluates computation trees on a pool that lives as long as the engine.
+ * One engine serves any number of run calls, also concurrently from several threads as long as
+ * they work on different trees; the pool is shut down only by close().
+ */
+public class LinearAlgebraEngine implements AutoCloseable {
 
-    private SharedMatrix leftMatrix = new SharedMatrix();
-    private SharedMatrix rightMatrix = new SharedMatrix();
-    private TiredExecutor executor;
+    private final TiredExecutor executor;
+    private final int numThreads;
+    private final ResultCache cache; //null when results are not cached
+    private volatile boolean closed = false;
+
+    //upper bound on the rows of the left matrix handled by one multiply task
+    private static final int MULTIPLY_ROWS_PER_TASK = 32;
+
+    //narrower tiles waste the vector width of the kernel
+    private static final int MIN_TILE_COLS = 64;
+
+    //thinner inner slices cost more in partial buffers and reduction than they gain
+    private static final int MIN_K_SLICE = 256;
+
+    //operands with at most this fraction of nonzeros go through the CSR kernels
+    private static final double SPARSE_DENSITY = 0.1;
+
+    //dead intermediates kept for reuse by one run, at most this fraction of the heap
+    private static final int POOL_HEAP_DIVISOR = 8;
+
+    //measured nanoseconds per element (per multiply-add for the products), refined after every node
+    private final RangeTasks.Cost addCost = new RangeTasks.Cost(1.0);
+    private final RangeTasks.Cost negateCost = new RangeTasks.Cost(0.5);
+    private final RangeTasks.Cost multiplyCost = new RangeTasks.Cost(0.5);
+    private final RangeTasks.Cost sparseCost = new RangeTasks.Cost(2.0);
 
     public LinearAlgebraEngine(int numThreads) {
+        this(numThreads, ExecutionMode.HANDOFF);
+    }
+
+    public LinearAlgebraEngine(int numThreads, ExecutionMode mode) {
+        this(numThreads, mode, null);
+    }
+
+    /**
+     * @param cache results looked up before a subtree is evaluated and stored after, or null for none
+     */
+    public LinearAlgebraEngine(int numThreads, ExecutionMode mode, ResultCache cache) {
         // creating executor with given thread count
-        this.executor = new TiredExecutor(numThreads);
+        this.executor = new TiredExecutor(numThreads, mode);
+        this.numThreads = numThreads;
+        this.cache = cache;
     }
 
-    //resolve computation tree step by step until final matrix is produced
-    //we will use it using recursion
+    //resolve computation tree until final matrix is produced, releasing each node once its children are done
+    //intermediates are consumed: results are written into the arrays of the operands the engine allocated,
+    //the leaf matrices belong to the caller and are only read (an operation that would overwrite one copies it)
+    //the pool stays up for the next run, it is shut down by close()
    public ComputationNode run(ComputationNode computationRoot) {
-        try {
-            if (computationRoot.getNodeType() == ComputationNodeType.MATRIX){
+        if (closed) {
+            throw new IllegalStateException("Engine is closed");
+        }
+        if (computationRoot == null) {
+            return null;
+        }
+        if (computationRoot.getNodeType() == ComputationNodeType.MATRIX){
+            return computationRoot;
+        }
+        //keys come from the leaves, so they are taken before anything consumes them
+        Map<ComputationNode, String> keys = null;
+        Set<ComputationNode> loaded = Set.of();
+        if (cache != null) {
+            keys = ResultCache.keysOf(computationRoot);
+            loaded = loadCached(computationRoot, keys);
+            if (computationRoot.getNodeType() == ComputationNodeType.MATRIX) {
                 return computationRoot;
             }
-            ComputationNode resolvable = computationRoot.findResolvable();
-            while (resolvable != null){
-                loadAndCompute(resolvable);
-                resolvable = computationRoot.findResolvable();
+        }
+        //every node starts as soon as its children are resolved, independent subtrees run side by side
+        DependencyGraph graph = DependencyGraph.of(computationRoot, loaded);
+        //buffers allocated during this run; an intermediate goes back once its last consumer is done
+        BufferPool pool = new BufferPool(Runtime.getRuntime().maxMemory() / POOL_HEAP_DIVISOR);
+        //per buffer of an intermediate (its first row), the uses not finished yet: consumers still to run and
+        //consumers running; a transpose shares its operand's buffer, so both count against the same entry
+        Map<double[], Integer> uses = new IdentityHashMap<>();
+        //a result loaded from the cache is a private copy, the run owns it like one it computed
+        for (ComputationNode node : loaded) {
+            double[][] stored = node.getStoredMatrix();
+            if (stored.length > 0) {
+                pool.adopt(stored);
+                uses.merge(stored[0], graph.consumers(node), Integer::sum);
             }
-            return computationRoot;
         }
-        finally{
+        Deque<ComputationNode> ready = new ArrayDeque<>(graph.initiallyReady());
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        int running = 0;
+        RuntimeException failure = null;
+        while (true) {
+            //after a failure nothing new is started, but what runs already is waited for
+            while (failure == null && !ready.isEmpty()) {
+                ComputationNode node = ready.poll();
+                //products cost far more than a copy of their result, element-wise results about as much
+                boolean store = keys != null && (node == computationRoot || node.getNodeType() == ComputationNodeType.MULTIPLY);
+                List<FusedTerm> terms = graph.fusedTerms(node);
+                List<ComputationNode> operands = terms != null ? termOperands(terms) : node.getChildren();
+                //only the bookkeeping happens here; density scans, loads and copies of borrowed operands run in a pool task
+                boolean[] borrowed = borrowedOf(operands, uses, pool);
+                CompletableFuture<Void> computed = new CompletableFuture<>();
+                running++;
+                CompletableFuture<Void> done = executor.submitAsync(() -> forward(terms != null
+                                ? computeFused(node, terms, operands, borrowed, pool)
+                                : computeAsync(node, operands, borrowed, pool), computed))
+                        .thenCompose(v -> computed);
+                if (store) {
+                    //the copy and the file write run in the pool, before the parents are released since they may
+                    //overwrite the result, without holding up the dispatch of other ready nodes
+                    String key = keys.get(node);
+                    done = done.thenCompose(v -> executor.submitAsync(() -> cache.store(key, node)));
+                }
+                done.whenComplete((v, e) -> completions.add(new Completion(node, operands, e)));
+            }
+            if (running == 0) {
+                break;
+            }
+            Completion c;
             try {
-                executor.shutdown();
+                c = completions.take();
             }
             catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while evaluating the computation tree", e);
+            }
+            running--;
+            if (c.error != null) {
+                if (failure == null) {
+                    failure = unwrap(c.error);
+                }
+            }
+            else {
+                recycle(c, graph.consumers(c.node), uses, pool);
+                ready.addAll(graph.complete(c.node));
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return computationRoot;
+    }
+
+    private static void forward(CompletableFuture<Void> from, CompletableFuture<Void> to) {
+        from.whenComplete((v, e) -> {
+            if (e != null) {
+                to.completeExceptionally(e);
+            }
+            else {
+                to.complete(null);
+            }
+        });
+    }
+
+    private static List<ComputationNode> termOperands(List<FusedTerm> terms) {
+        List<ComputationNode> operands = new ArrayList<>(terms.size());
+        for (FusedTerm term : terms) {
+            operands.add(term.operand);
+        }
+        return operands;
+    }
+
+    /**
+     * Which operands node may not overwrite: the caller's arrays (leaves, and transposes of them),
+     * and any intermediate that is read by some other use, running or still to come, including
+     * another operand position of node itself. Shared operands are only read in place; an operation
+     * that writes copies a borrowed operand first, so consumers that only read never pay for a copy.
+     */
+    private static boolean[] borrowedOf(List<ComputationNode> operands, Map<double[], Integer> uses, BufferPool pool) {
+        boolean[] borrowed = new boolean[operands.size()];
+        for (int i = 0; i < borrowed.length; i++) {
+            double[][] stored = operands.get(i).getStoredMatrix();
+            borrowed[i] = stored.length == 0 || !pool.owns(stored) || uses.getOrDefault(stored[0], 0) != 1;
+        }
+        return borrowed;
+    }
+
+    //operand itself, or a private copy when its arrays belong to the caller and are about to be overwritten
+    private static ComputationNode writable(ComputationNode operand, boolean borrowed, BufferPool pool) {
+        return borrowed ? copyOf(operand, pool) : operand;
+    }
+
+    private static ComputationNode copyOf(ComputationNode resolved, BufferPool pool) {
+        double[][] copy = copyRows(resolved.getStoredMatrix(), pool);
+        ComputationNode node = new ComputationNode(copy);
+        node.resolve(copy, resolved.isTransposed());
+        return node;
+    }
+
+    private static double[][] copyRows(double[][] stored, BufferPool pool) {
+        double[][] copy = pool.acquire(stored.length, stored.length == 0 ? 0 : stored[0].length);
+        for (int i = 0; i < stored.length; i++) {
+            if (stored[i].length != copy[i].length) {
+                throw new IllegalArgumentException("Input matrix must be rectangular.");
+            }
+            System.arraycopy(stored[i], 0, copy[i], 0, stored[i].length);
+        }
+        return copy;
+    }
+
+    /**
+     * Resolves every subtree whose result is cached, top-down, so that a hit skips the whole subtree.
+     * Returns the nodes resolved this way.
+     */
+    private Set<ComputationNode> loadCached(ComputationNode root, Map<ComputationNode, String> keys) {
+        Set<ComputationNode> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<ComputationNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            if (node.getNodeType() == ComputationNodeType.MATRIX || !seen.add(node)) {
+                continue;
+            }
+            if (cache.load(keys.get(node), node)) {
+                loaded.add(node);
+            }
+            else {
+                for (ComputationNode child : node.getChildren()) {
+                    stack.push(child);
+                }
             }
         }
+        return loaded;
     }
 
+    /**
+     * Books the end of node: its result buffer takes over the uses of its consumers, then node's own
+     * use of every operand ends. A buffer without uses left goes back to the pool, unless it holds
+     * node's result (in-place operations, transposes, or the root). Only buffers of the pool are
+     * counted: leaves, and results that still share their arrays, are the caller's.
+     */
+    private static void recycle(Completion c, int consumers, Map<double[], Integer> uses, BufferPool pool) {
+        double[][] result = c.node.getStoredMatrix();
+        double[] resultRow = result.length == 0 ? null : result[0];
+        if (resultRow != null && pool.owns(result)) {
+            uses.merge(resultRow, consumers, Integer::sum);
+        }
+        for (ComputationNode operand : c.operands) {
+            double[][] stored = operand.getStoredMatrix();
+            if (stored.length == 0 || !uses.containsKey(stored[0])) {
+                continue;
+            }
+            if (uses.merge(stored[0], -1, Integer::sum) <= 0) {
+                uses.remove(stored[0]);
+                if (stored[0] != resultRow) {
+                    pool.release(stored);
+                }
+            }
+        }
+    }
+
+    //a node whose work has finished, successfully when error is null
+    private static final class Completion {
+        final ComputationNode node;
+        final List<ComputationNode> operands;
+        final Throwable error;
+
+        Completion(ComputationNode node, List<ComputationNode> operands, Throwable error) {
+            this.node = node;
+            this.operands = operands;
+            this.error = error;
+        }
+    }
+
+    //waits for f and rethrows what failed it as is
+    private static void await(CompletableFuture<?> f) {
+        try {
+            f.join();
+        }
+        catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable t) {
+        Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException(cause);
+    }
+
+    /**
+     * Waits for the tasks still running and stops the pool. Calling it again has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            executor.shutdown();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
     // Load operand matrices and compute the result
     //an assumption is that the children of the node are already computed and solved
     public void loadAndCompute(ComputationNode node) {
+        if (node.getNodeType() == ComputationNodeType.MATRIX) {
+            return;
+        }
+        //nothing to recycle for a single node, the pool only hands out new buffers here
+        //the children are the caller's, so they are copied before anything is written into them
+        boolean[] borrowed = new boolean[node.getChildren().size()];
+        Arrays.fill(borrowed, true);
+        await(computeAsync(node, node.getChildren(), borrowed, new BufferPool(0)));
+    }
+
+    /**
+     * Loads the operands of node, submits its tasks without waiting for them and returns a future
+     * that completes once the result has been handed to the node.
+     * children are the resolved operands; the operation consumes those it may overwrite and copies
+     * the borrowed ones (the caller's arrays) before it writes.
+     */
+    private CompletableFuture<Void> computeAsync(ComputationNode node, List<ComputationNode> children, boolean[] borrowed, BufferPool pool) {
         ComputationNodeType type = node.getNodeType();
         //if the type is matrix we have nothing to do, bc we need an action like add or negate
         if (type == ComputationNodeType.MATRIX) {
-            return;
-        }
-        List<ComputationNode> children = node.getChildren();
-        if (children.size() > 0) {
-            this.leftMatrix.loadRowMajor(children.get(0).getMatrix());//loading the left child matrix as rows
+            return CompletableFuture.completedFuture(null);
         }
-        if (children.size() > 1) {
-            this.rightMatrix.loadRowMajor(children.get(1).getMatrix());//loadint the right child matrix as rows
+        //adjacency-like operands skip the dense path entirely
+        if ((type == ComputationNodeType.ADD || type == ComputationNodeType.MULTIPLY) && children.size() == 2) {
+            CompletableFuture<double[][]> sparseResult = computeSparse(type, children.get(0), children.get(1), borrowed, pool);
+            if (sparseResult != null) {
+                double scale = node.getScale();
+                return sparseResult.thenAccept(result -> {
+                    if (type == ComputationNodeType.MULTIPLY && scale != 1.0) {
+                        scaleRows(result, scale);
+                    }
+                    node.resolve(result);
+                });
+            }
         }
-        List<Runnable> tasks = new ArrayList<>();
+        //operands live only as long as this node, so concurrent nodes and runs never share them
+        SharedMatrix leftMatrix = new SharedMatrix();
+        SharedMatrix rightMatrix = new SharedMatrix();
+        CompletableFuture<Void> work;
         if (type == ComputationNodeType.ADD) {
-            tasks = createAddTasks();
+            //the sum is written into the left operand
+            loadOperand(leftMatrix, writable(children.get(0), borrowed[0], pool), null);
+            //the right operand is loaded in the same layout so that vector i of both sides lines up
+            loadOperand(rightMatrix, children.get(1), leftMatrix.getOrientation());
+            work = executor.submitAllAsync(createAddTasks(leftMatrix, rightMatrix));
         } 
         else if (type == ComputationNodeType.MULTIPLY) {
-            tasks = createMultiplyTasks();
+            loadOperand(leftMatrix, children.get(0), VectorOrientation.ROW_MAJOR);
+            //every tile walks the right operand across its vectors, so it is packed into one array in its own layout;
+            //a transposed right operand stays column-major and is multiplied column by column
+            loadPacked(rightMatrix, children.get(1));
+            work = computeMultiply(leftMatrix, rightMatrix, node.getScale(), pool);
         } 
         else if (type == ComputationNodeType.NEGATE) {
-            tasks = createNegateTasks();
+            loadOperand(leftMatrix, writable(children.get(0), borrowed[0], pool), null);
+            work = executor.submitAllAsync(createNegateTasks(leftMatrix));
         } 
         else if (type == ComputationNodeType.TRANSPOSE) {
-            tasks = createTransposeTasks();
+            //metadata only, no tasks and no copy
+            loadOperand(leftMatrix, children.get(0), null);
+            leftMatrix.transpose();
+            work = CompletableFuture.completedFuture(null);
         } 
         else {
             throw new IllegalArgumentException("Unknown operation: " + type);
         }
-        //they are exsiting tasks to execute
-        if (!tasks.isEmpty()) {
-            executor.submitAll(tasks); //submit tasks one by one and to executer and wait until all finish
+        return work.thenRun(() -> {
+            //a column-major result is handed over as its columns and flagged as transposed
+            boolean transposed = leftMatrix.getOrientation() == VectorOrientation.COLUMN_MAJOR;
+            double[][] resultData = leftMatrix.detachStorage(); //no copy, the arrays now belong to the node
+            rightMatrix.release(); //drop our references to the right operand, without copying it out
+            node.resolve(resultData, transposed);//Resolves turn operator node to matrix node and deltes childten
+        });
+    }
+
+    /**
+     * Loads a resolved child into target.
+     * With want == null the child's own layout is kept (a transposed child becomes column-major)
+     * and its row arrays are adopted as they are, without packing them into contiguous storage
+     * (see SharedMatrix.adoptRowMajor): the child is consumed by its parent, so the operation may
+     * write into them, and a borrowed child has been copied by the caller already.
+     * Otherwise the data is rearranged once into new, contiguous storage.
+     */
+    private void loadOperand(SharedMatrix target, ComputationNode child, VectorOrientation want) {
+        double[][] stored = child.getStoredMatrix();
+        boolean transposed = child.isTransposed();
+        VectorOrientation storedAs = transposed ? VectorOrientation.COLUMN_MAJOR : VectorOrientation.ROW_MAJOR;
+        if (want == null || want == storedAs) {
+            target.adoptRowMajor(stored);
+        }
+        else {
+            //the vectors we want are the columns of the stored array
+            target.loadColumnMajor(stored);
+        }
+        if (transposed) {
+            target.transpose();
         }
-        double[][] resultData = this.leftMatrix.readRowMajor();
-        node.resolve(resultData);//Resolves turn operator node to matrix node and deltes childten
     }
 
+    //a contiguous copy of the child in the layout it is stored in
+    private static void loadPacked(SharedMatrix target, ComputationNode child) {
+        target.loadRowMajor(child.getStoredMatrix());
+        if (child.isTransposed()) {
+            target.transpose();
+        }
+    }
 
-     // return tasks that perform row-wise addition
-    public List<Runnable> createAddTasks() {
-        List<Runnable> tasks = new ArrayList<>();
-        //our assumption is that the num of rows is equal in both matrixes, we check that in SharedVector
-        for (int i = 0; i < leftMatrix.length(); i++) {
-            final int rowIndex = i; // must be final to be used in Lambda
-            tasks.add(() -> {
-                SharedVector v1 = leftMatrix.get(rowIndex);
-                SharedVector v2 = rightMatrix.get(rowIndex);
-                v1.add(v2); 
-            });
+    /**
+     * Evaluates a fused chain of ADD, NEGATE and TRANSPOSE as one signed n-ary sum: a single wave
+     * of tasks reads every operand once and writes the result once, instead of one load, task wave
+     * and result per node of the chain. The result takes the layout of the first term, whose arrays
+     * are updated in place when this node owns them; other terms are read across when their layout differs.
+     */
+    private CompletableFuture<Void> computeFused(ComputationNode node, List<FusedTerm> terms, List<ComputationNode> operands,
+                                                 boolean[] borrowed, BufferPool pool) {
+        int count = terms.size();
+        double[][][] arrays = new double[count][][];
+        double[] signs = new double[count];
+        boolean[] across = new boolean[count];
+        FusedTerm first = terms.get(0);
+        boolean transposed = first.transposed != operands.get(0).isTransposed();
+        for (int t = 0; t < count; t++) {
+            FusedTerm term = terms.get(t);
+            ComputationNode operand = operands.get(t);
+            arrays[t] = operand.getStoredMatrix();
+            signs[t] = term.sign;
+            across[t] = (term.transposed != operand.isTransposed()) != transposed;
         }
-        return tasks;
+        int rows = arrays[0].length;
+        int cols = rows == 0 ? 0 : arrays[0][0].length;
+        for (int t = 1; t < count; t++) {
+            int r = across[t] ? (arrays[t].length == 0 ? 0 : arrays[t][0].length) : arrays[t].length;
+            int c = across[t] ? arrays[t].length : (arrays[t].length == 0 ? 0 : arrays[t][0].length);
+            if (r != rows || c != cols) {
+                throw new IllegalArgumentException("Matrices must have the same dimensions to add.");
+            }
+        }
+        //the first term is overwritten only if no other term reads the same arrays and they are not the caller's
+        boolean shared = borrowed[0];
+        for (int t = 1; t < count; t++) {
+            shared |= arrays[t] == arrays[0];
+        }
+        double[][] target = shared ? pool.acquire(rows, cols) : arrays[0];
+        List<Runnable> tasks = RangeTasks.split(rows, numThreads, (long) cols * count, Integer.MAX_VALUE, addCost,
+                (from, to) -> SharedMatrix.sumRows(target, arrays, signs, across, from, to));
+        return executor.submitAllAsync(tasks).thenRun(() -> node.resolve(target, transposed));
     }
 
-    //return tasks that perform row × matrix multiplication
-    public List<Runnable> createMultiplyTasks() {
-        List<Runnable> tasks = new ArrayList<>();
-        //our assumption is that the num of rows is equal in both matrixes, we check that in SharedVector
-        for (int i = 0; i < leftMatrix.length(); i++) {
-            final int rowIndex = i; // must be final to be used in Lambda
-            tasks.add(() -> {
-                leftMatrix.get(rowIndex).vecMatMul(rightMatrix); 
-            });
+    /**
+     * Runs ADD or MULTIPLY with the CSR kernels when at least one operand is sparse enough.
+     * Returns null when both operands are dense, in which case the caller uses the dense path;
+     * otherwise a future of the result, completed once the tasks are done.
+     */
+    private CompletableFuture<double[][]> computeSparse(ComputationNodeType type, ComputationNode leftNode, ComputationNode rightNode,
+                                                        boolean[] borrowed, BufferPool pool) {
+        //density does not depend on the layout, so it is measured on the stored arrays as they are
+        boolean leftSparse = SparseMatrix.isSparse(leftNode.getStoredMatrix(), SPARSE_DENSITY);
+        boolean rightSparse = SparseMatrix.isSparse(rightNode.getStoredMatrix(), SPARSE_DENSITY);
+        if (!leftSparse && !rightSparse) {
+            return null;
         }
-        return tasks;
+        //the CSR kernels work on plain row-major arrays, so only now are transposed children materialized,
+        //into new buffers that nobody else reads
+        double[][] left = rowMajorOf(leftNode, pool);
+        double[][] right = rowMajorOf(rightNode, pool);
+        boolean leftBorrowed = borrowed[0] && left == leftNode.getStoredMatrix();
+        boolean rightBorrowed = borrowed[1] && right == rightNode.getStoredMatrix();
+        int rows = left.length;
+        List<Runnable> tasks;
+        double[][] result;
+        if (type == ComputationNodeType.ADD) {
+            if (rows != right.length || left[0].length != right[0].length) {
+                throw new IllegalArgumentException("Matrices must have the same dimensions to add.");
+            }
+            //scatter the sparse operand into the denser one, whose rows the consumed child hands over
+            //unless they are the caller's
+            double[][] dense = rightSparse ? left : right;
+            result = (rightSparse ? leftBorrowed : rightBorrowed) ? copyRows(dense, pool) : dense;
+            SparseMatrix scattered = SparseMatrix.fromDense(rightSparse ? right : left);
+            long perRow = Math.max(1, scattered.nonZeros() / Math.max(1, rows));
+            tasks = RangeTasks.split(rows, numThreads, perRow, Integer.MAX_VALUE, sparseCost,
+                    (from, to) -> scattered.addToRows(from, to, result));
+        }
+        else {
+            if (left[0].length != right.length) {
+                throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
+            }
+            result = pool.acquireZeroed(rows, right[0].length);
+            SparseMatrix sparseLeft = leftSparse ? SparseMatrix.fromDense(left) : null;
+            SparseMatrix sparseRight = rightSparse ? SparseMatrix.fromDense(right) : null;
+            RangeTasks.RangeBody body;
+            long perRow;
+            if (sparseLeft != null && sparseRight != null) {
+                body = (from, to) -> sparseLeft.multiplySparseRows(from, to, sparseRight, result);
+                perRow = Math.max(1, sparseLeft.nonZeros() / Math.max(1, rows)) * Math.max(1, sparseRight.nonZeros() / Math.max(1, right.length));
+            }
+            else if (sparseLeft != null) {
+                body = (from, to) -> sparseLeft.multiplyDenseRows(from, to, right, result);
+                perRow = Math.max(1, sparseLeft.nonZeros() / Math.max(1, rows)) * (long) right[0].length;
+            }
+            else {
+                body = (from, to) -> sparseRight.multiplyByDenseRows(left, from, to, result);
+                perRow = (long) left[0].length + sparseRight.nonZeros();
+            }
+            tasks = RangeTasks.split(rows, numThreads, perRow, Integer.MAX_VALUE, sparseCost, body);
+        }
+        return executor.submitAllAsync(tasks).thenApply(v -> {
+            //materialized operands are garbage now, unless one became the result
+            if (left != leftNode.getStoredMatrix() && left != result) {
+                pool.release(left);
+            }
+            if (right != rightNode.getStoredMatrix() && right != result) {
+                pool.release(right);
+            }
+            return result;
+        });
+    }
+
+    //the stored arrays of a row-major node, or a pooled row-major copy of a transposed one
+    private static double[][] rowMajorOf(ComputationNode node, BufferPool pool) {
+        double[][] stored = node.getStoredMatrix();
+        if (!node.isTransposed() || stored.length == 0) {
+            return stored;
+        }
+        int cols = stored[0].length;
+        double[][] rows = pool.acquire(cols, stored.length);
+        for (int j = 0; j < stored.length; j++) {
+            if (stored[j].length != cols) {
+                throw new IllegalArgumentException("Input matrix must be rectangular.");
+            }
+            for (int i = 0; i < cols; i++) {
+                rows[i][j] = stored[j][i];
+            }
+        }
+        return rows;
+    }
+
+    //the sparse kernels have no scalar, a scaled product is rescaled afterwards
+    private static void scaleRows(double[][] m, double scale) {
+        for (double[] row : m) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] *= scale;
+            }
+        }
+    }
+
+    //elements in each vector of leftMatrix, the unit of work for add and negate
+    private static long vectorLength(SharedMatrix leftMatrix) {
+        return leftMatrix.length() == 0 ? 0 : leftMatrix.get(0).length();
     }
 
-    public List<Runnable> createNegateTasks() {
-       List<Runnable> tasks = new ArrayList<>();
+     // return tasks that perform row-wise addition
+     //each task covers a range of rows, sized from the worker count and the measured cost per element
+    public List<Runnable> createAddTasks(SharedMatrix leftMatrix, SharedMatrix rightMatrix) {
         //our assumption is that the num of rows is equal in both matrixes, we check that in SharedVector
-        for (int i = 0; i < leftMatrix.length(); i++) {
-            final int rowIndex = i; // must be final to be used in Lambda
-            tasks.add(() -> {
-                leftMatrix.get(rowIndex).negate();
-            });
+        return RangeTasks.split(leftMatrix.length(), numThreads, vectorLength(leftMatrix), Integer.MAX_VALUE, addCost,
+                (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        leftMatrix.get(i).add(rightMatrix.get(i));
+                    }
+                });
+    }
+
+    /**
+     * Multiplies leftMatrix by rightMatrix over 2D tiles of the output, so a product with few
+     * left rows still spreads over the columns. When even the tiles cannot keep the workers busy
+     * (few rows and few columns, long inner dimension) the inner dimension is split as well:
+     * every slice accumulates into its own buffer and a second wave adds them up.
+     * The result replaces the rows of leftMatrix when the returned future completes.
+     * rightMatrix must be private to this product (see loadPacked), it is read without locks.
+     */
+    private CompletableFuture<Void> computeMultiply(SharedMatrix leftMatrix, SharedMatrix rightMatrix, double scale, BufferPool pool) {
+        if (rightMatrix.length() == 0) {
+            throw new IllegalArgumentException("Matrix cannot be empty");
         }
-        return tasks;
+        int m = leftMatrix.length();
+        boolean rightColumns = rightMatrix.getOrientation() == VectorOrientation.COLUMN_MAJOR;
+        int k = rightColumns ? rightMatrix.get(0).length() : rightMatrix.length();
+        int n = rightColumns ? rightMatrix.length() : rightMatrix.get(0).length();
+        //checked up front so a mismatch fails before the buffers are allocated
+        if (m > 0 && leftMatrix.get(0).length() != k) {
+            throw new IllegalArgumentException("Vector length must match the number of matrix rows for multiplication.");
+        }
+        int[] splits = multiplySplits(m, n, k);
+        int kSplits = splits[2];
+        double[][][] buffers = new double[kSplits][][];//buffers[0] receives the result
+        for (int s = 0; s < kSplits; s++) {
+            buffers[s] = pool.acquireZeroed(m, n);
+        }
+        CompletableFuture<Void> tiles = executor.submitAllAsync(createMultiplyTasks(leftMatrix, rightMatrix, splits, buffers, scale, true));
+        if (kSplits > 1) {
+            tiles = tiles.thenCompose(v -> executor.submitAllAsync(
+                    RangeTasks.split(m, numThreads, (long) n * (kSplits - 1), Integer.MAX_VALUE, addCost,
+                    (from, to) -> {
+                        for (int s = 1; s < kSplits; s++) {
+                            SharedMatrix.addRows(buffers[0], buffers[s], from, to);
+                        }
+                    }))).thenRun(() -> {
+                        for (int s = 1; s < kSplits; s++) {
+                            pool.release(buffers[s]);
+                        }
+                    });
+        }
+        return tiles.thenRun(() -> leftMatrix.adoptRowMajor(buffers[0]));
     }
-    
 
-    //return tasks that transpose rows
-    public List<Runnable> createTransposeTasks() {
+    //number of row blocks, column blocks and inner slices for an m x k by k x n product
+    private int[] multiplySplits(int m, int n, int k) {
+        long work = (long) m * n * k;
+        //about two tiles per worker, fewer when the whole product is too small to be worth splitting
+        long affordable = (long) (work * multiplyCost.nanosPerUnit() / RangeTasks.TARGET_TASK_NANOS);
+        int wanted = (int) Math.max(1, Math.min(2L * numThreads, affordable));
+        int rowBlocks = Math.max(1, Math.max(Math.min(m, wanted), ceilDiv(m, MULTIPLY_ROWS_PER_TASK)));
+        int colBlocks = Math.max(1, Math.min(ceilDiv(n, MIN_TILE_COLS), ceilDiv(wanted, rowBlocks)));
+        int kSplits = Math.max(1, Math.min(ceilDiv(wanted, rowBlocks * colBlocks), k / MIN_K_SLICE));
+        return new int[]{rowBlocks, colBlocks, kSplits};
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    //return one task per (row block, column block, inner slice) of the product
+    //splits holds the row blocks, column blocks and inner slices; slice s accumulates into buffers[s]
+    //and the tiles of one slice write disjoint parts of it
+    //the product is multiplied by scale, which the optimizer uses for folded negations
+    public List<Runnable> createMultiplyTasks(SharedMatrix leftMatrix, SharedMatrix rightMatrix, int[] splits, double[][][] buffers, double scale) {
+        return createMultiplyTasks(leftMatrix, rightMatrix, splits, buffers, scale, false);
+    }
+
+    //rightPrivate: nothing writes rightMatrix while the tasks run, the packed operand of one product
+    //is built for it alone, so the tiles read it without stamps or locks (see SharedMatrix.multiplyTile)
+    private List<Runnable> createMultiplyTasks(SharedMatrix leftMatrix, SharedMatrix rightMatrix, int[] splits, double[][][] buffers,
+                                               double scale, boolean rightPrivate) {
         List<Runnable> tasks = new ArrayList<>();
-        //our assumption is that the num of rows is equal in both matrixes, we check that in SharedVector
-        for (int i = 0; i < leftMatrix.length(); i++) {
-            final int rowIndex = i; // must be final to be used in Lambda
-            tasks.add(() -> {
-                leftMatrix.get(rowIndex).transpose();
-            });
+        int m = leftMatrix.length();
+        if (m == 0 || rightMatrix.length() == 0) {
+            return tasks;
+        }
+        boolean rightColumns = rightMatrix.getOrientation() == VectorOrientation.COLUMN_MAJOR;
+        int k = rightColumns ? rightMatrix.get(0).length() : rightMatrix.length();
+        int n = rightColumns ? rightMatrix.length() : rightMatrix.get(0).length();
+        if (splits.length != 3 || splits[2] != buffers.length) {
+            throw new IllegalArgumentException("Expected " + splits[2] + " partial buffers");
+        }
+        for (int s = 0; s < splits[2]; s++) {
+            final double[][] out = buffers[s];
+            final int k0 = (int) ((long) k * s / splits[2]);
+            final int k1 = (int) ((long) k * (s + 1) / splits[2]);
+            for (int r = 0; r < splits[0]; r++) {
+                final int r0 = (int) ((long) m * r / splits[0]);
+                final int r1 = (int) ((long) m * (r + 1) / splits[0]);
+                for (int c = 0; c < splits[1]; c++) {
+                    final int c0 = (int) ((long) n * c / splits[1]);
+                    final int c1 = (int) ((long) n * (c + 1) / splits[1]);
+                    tasks.add(() -> {
+                        long start = System.nanoTime();
+                        leftMatrix.multiplyTile(r0, r1, c0, c1, k0, k1, rightMatrix, out, scale, rightPrivate);
+                        multiplyCost.record((long) (r1 - r0) * (c1 - c0) * (k1 - k0), System.nanoTime() - start);
+                    });
+                }
+            }
         }
         return tasks;
     }
 
+    public List<Runnable> createNegateTasks(SharedMatrix leftMatrix) {
+        return RangeTasks.split(leftMatrix.length(), numThreads, vectorLength(leftMatrix), Integer.MAX_VALUE, negateCost,
+                (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        leftMatrix.get(i).negate();
+                    }
+                });
+    }
+    
+
     // return summary of worker activity
     //helps us check the programm is parallel
     public String getWorkerReport() {
@@ -1,18 +1,42 @@
 package spl.lae;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import parser.*;
+import scheduling.ExecutionMode;
 
 public class Main {
     public static void main(String[] args) throws IOException {
 
-      if (args.length != 3) {
-        System.out.println("Usage: java -jar LAE.jar <numThreads> <inputFilePath> <outputFilePath>");
+      //optional flags come before the positional arguments
+      ExecutionMode mode = ExecutionMode.HANDOFF;
+      String cacheDir = null;
+      int first = 0;
+      while (first < args.length && args[first].startsWith("--")) {
+        if (args[first].equals("--work-stealing")) {
+          mode = ExecutionMode.WORK_STEALING;
+        }
+        else if (args[first].equals("--virtual")) {
+          mode = ExecutionMode.VIRTUAL;
+        }
+        else if (args[first].startsWith("--cache-dir=")) {
+          cacheDir = args[first].substring("--cache-dir=".length());
+        }
+        else {
+          System.out.println("Unknown option: " + args[first]);
+          return;
+        }
+        first++;
+      }
+
+      if (args.length - first != 3) {
+        System.out.println("Usage: java --add-modules jdk.incubator.vector -jar LAE.jar [--work-stealing | --virtual] [--cache-dir=<dir>] <numThreads> <inputFilePath> <outputFilePath>");
         return;
       }
       
-      String inputPath = args[1];
-      String outputPath = args[2];
+      String inputPath = args[first + 1];
+      String outputPath = args[first + 2];
 
       //parse the input file
       try {
@@ -20,21 +44,44 @@ public class Main {
         ComputationNode computationRoot = inputParser.parse(inputPath);
 
         //create LinearAlgebraEngine with args[0] threads
-        int numThreads = Integer.parseInt(args[0]);
+        int numThreads = Integer.parseInt(args[first]);
+
+        //virtual threads run on a shared carrier pool; cap it at numThreads unless the user already chose a size
+        //(must happen before the first virtual thread is created)
+        if (mode == ExecutionMode.VIRTUAL && numThreads > 0
+            && System.getProperty("jdk.virtualThreadScheduler.parallelism") == null) {
+          System.setProperty("jdk.virtualThreadScheduler.parallelism", Integer.toString(numThreads));
+        }
 
         //handle associative nesting
         recursiveAssociativeNesting(computationRoot);
 
-        LinearAlgebraEngine engine = new LinearAlgebraEngine(numThreads);
+        //algebraic rewrites remove passes that cancel out or can be folded
+        AlgebraicOptimizer optimizer = new AlgebraicOptimizer();
+        computationRoot = optimizer.optimize(computationRoot);
+        System.out.println(optimizer.getReport());
+
+        //identical subexpressions are evaluated once
+        CommonSubexpressions.eliminate(computationRoot);
+
+        //results of earlier invocations over the same matrices are picked up from the cache directory
+        ResultCache cache = cacheDir == null ? null
+            : new ResultCache(Runtime.getRuntime().maxMemory() / 4, java.nio.file.Paths.get(cacheDir));
+
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(numThreads, mode, cache)) {
 
-        //run the computation
-        ComputationNode result = engine.run(computationRoot);
+          //run the computation
+          ComputationNode result = engine.run(computationRoot);
 
-        //report
-        System.out.println(engine.getWorkerReport());
+          //report
+          System.out.println(engine.getWorkerReport());
+          if (cache != null) {
+            System.out.println(cache.getReport());
+          }
 
-        //write the result to output file - success
-        OutputWriter.write(result.getMatrix(), outputPath);
+          //write the result to output file - success
+          OutputWriter.write(result.getMatrix(), outputPath);
+        }
         }
 
         catch (Exception e){
@@ -45,21 +92,25 @@ public class Main {
       }
 
       /**
-     * Recursive helper function to associativeNesting.
-     * Traverses the tree bottom-up (Post-Order) and applies associativeNesting to every node.
-     * This ensures that nested operations (like A+B+C) are correctly structured before execution.
+     * Helper function to associativeNesting.
+     * Visits every node of the tree with an explicit stack and applies associativeNesting to it.
+     * Nesting a node only adds nodes above its existing children, so the visiting order does not matter
+     * and deep trees do not overflow the call stack.
      */
-    private static void recursiveAssociativeNesting(ComputationNode node) {
-        if (node == null) {
+    private static void recursiveAssociativeNesting(ComputationNode root) {
+        if (root == null) {
             return;
         }
-
-        if (node.getChildren() != null) {
-            for (ComputationNode child : node.getChildren()) {
-                recursiveAssociativeNesting(child);
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.pop();
+            if (node.getChildren() != null) {
+                for (ComputationNode child : node.getChildren()) {
+                    stack.push(child);
+                }
             }
+            node.associativeNesting();
         }
-
-        node.associativeNesting();
     }
-}
\ No newline at end of file
+}
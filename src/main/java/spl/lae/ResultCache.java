@@ -0,0 +1,301 @@
+package spl.lae;
+
+import parser.ComputationNode;
+import parser.ComputationNodeType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of subexpressions kept across runs, addressed by the content of the subtree that
+ * produced them: a leaf is identified by the SHA-256 of its values, an operator by its type, its
+ * scalar and the keys of its children, so the same expression over the same matrices finds its
+ * result again in another run or, with a directory, in another process.
+ * In memory the least recently used entries are evicted beyond maxBytes; the directory, when
+ * given, keeps every result and is read on a memory miss. The cache is best effort: a file that
+ * cannot be read or written is a miss, never an error of the run.
+ * Thread safe.
+ */
+public class ResultCache {
+
+    //stored values, and the orientation they were stored in
+    private static final class Entry {
+        final double[][] matrix;
+        final boolean transposed;
+
+        Entry(double[][] matrix, boolean transposed) {
+            this.matrix = matrix;
+            this.transposed = transposed;
+        }
+
+        long bytes() {
+            return matrix.length == 0 ? 0 : (long) matrix.length * matrix[0].length * Double.BYTES;
+        }
+    }
+
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long stores = 0;
+
+    /** An in-memory cache of at most maxBytes. */
+    public ResultCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * @param maxBytes  upper bound on the bytes kept in memory
+     * @param directory where results are also written, or null for memory only; created if missing
+     */
+    public ResultCache(long maxBytes, Path directory) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+            }
+            catch (IOException e) {
+                throw new IllegalArgumentException("Cannot use cache directory " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Content keys of every node of the tree, computed bottom-up without recursion.
+     * Must run before the tree is evaluated, since evaluation consumes the leaf matrices.
+     */
+    public static Map<ComputationNode, String> keysOf(ComputationNode root) {
+        Map<ComputationNode, String> keys = new IdentityHashMap<>();
+        if (root == null) {
+            return keys;
+        }
+        MessageDigest digest = sha256();
+        Deque<ComputationNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            ComputationNode node = stack.peek();
+            if (keys.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            if (node.getNodeType() == ComputationNodeType.MATRIX) {
+                stack.pop();
+                keys.put(node, leafKey(digest, node));
+                continue;
+            }
+            boolean childrenDone = true;
+            for (ComputationNode child : node.getChildren()) {
+                if (!keys.containsKey(child)) {
+                    stack.push(child);
+                    childrenDone = false;
+                }
+            }
+            if (!childrenDone) {
+                continue;
+            }
+            stack.pop();
+            digest.update((byte) node.getNodeType().ordinal());
+            digest.update(ByteBuffer.allocate(Double.BYTES).putDouble(node.getScale()).array());
+            for (ComputationNode child : node.getChildren()) {
+                digest.update(HexFormat.of().parseHex(keys.get(child)));
+            }
+            keys.put(node, HexFormat.of().formatHex(digest.digest()));
+        }
+        return keys;
+    }
+
+    //a transposed leaf hashes its stored rows and the flag, so equal values in other layouts only miss
+    private static String leafKey(MessageDigest digest, ComputationNode leaf) {
+        double[][] m = leaf.getStoredMatrix();
+        int cols = m.length == 0 ? 0 : m[0].length;
+        ByteBuffer header = ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+        header.put((byte) (leaf.isTransposed() ? 1 : 0)).putInt(m.length).putInt(cols);
+        digest.update(header.array());
+        ByteBuffer row = ByteBuffer.allocate(cols * Double.BYTES);
+        for (double[] r : m) {
+            //a ragged row is hashed as is, the engine reports the shape error when it gets there
+            ByteBuffer buf = r.length == cols ? row.clear() : ByteBuffer.allocate(r.length * Double.BYTES);
+            buf.asDoubleBuffer().put(r);
+            digest.update(buf.array());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Resolves node to a private copy of the result stored under key and returns true,
+     * or returns false and leaves node alone when nothing is stored.
+     */
+    public boolean load(String key, ComputationNode node) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            entry = readFile(key);
+            if (entry != null) {
+                synchronized (this) {
+                    insert(key, entry);
+                }
+            }
+        }
+        synchronized (this) {
+            if (entry == null) {
+                misses++;
+                return false;
+            }
+            hits++;
+        }
+        //the run consumes what it is given, the cached arrays stay untouched
+        node.resolve(copy(entry.matrix), entry.transposed);
+        return true;
+    }
+
+    /**
+     * Stores a copy of the resolved value of node under key, in memory and in the directory.
+     */
+    public void store(String key, ComputationNode resolved) {
+        Entry entry = new Entry(copy(resolved.getStoredMatrix()), resolved.isTransposed());
+        synchronized (this) {
+            stores++;
+            insert(key, entry);
+        }
+        writeFile(key, entry);
+    }
+
+    //caller holds the lock
+    private void insert(String key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.bytes();
+        }
+        bytes += entry.bytes();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private Entry readFile(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            boolean transposed = in.readBoolean();
+            int rows = in.readInt();
+            int cols = in.readInt();
+            //the header is only trusted if the file is exactly as long as it says, so a corrupt or
+            //foreign file cannot make us allocate more than it holds
+            if (rows < 0 || cols < 0 || (rows > 0 && cols == 0)
+                    || Files.size(file) != 1 + 2 * Integer.BYTES + (long) rows * cols * Double.BYTES) {
+                return null;
+            }
+            double[][] m = new double[rows][cols];
+            for (double[] row : m) {
+                for (int j = 0; j < cols; j++) {
+                    row[j] = in.readDouble();
+                }
+            }
+            return new Entry(m, transposed);
+        }
+        catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    //written to a temporary file first, so a concurrent reader never sees half a result
+    private void writeFile(String key, Entry entry) {
+        if (directory == null) {
+            return;
+        }
+        Path file = directory.resolve(key + ".bin");
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                double[][] m = entry.matrix;
+                out.writeBoolean(entry.transposed);
+                out.writeInt(m.length);
+                out.writeInt(m.length == 0 ? 0 : m[0].length);
+                for (double[] row : m) {
+                    for (double v : row) {
+                        out.writeDouble(v);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                }
+                catch (IOException ignored) {
+                    //nothing left to do, the result is simply not persisted
+                }
+            }
+        }
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            c[i] = m[i].clone();
+        }
+        return c;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized String getReport() {
+        return "=== Cache Report ===\n"
+            + "hits = " + hits + " | misses = " + misses + " | stored = " + stores
+            + " | in memory = " + entries.size() + " results, " + bytes + " bytes\n";
+    }
+
+}
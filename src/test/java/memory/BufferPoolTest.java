@@ -0,0 +1,90 @@
+package memory;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    void acquire_afterRelease_reusesBufferOfSameShape() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[][] first = pool.acquire(3, 4);
+        pool.release(first);
+
+        assertSame(first, pool.acquire(3, 4));
+        assertEquals(1, pool.getReusedCount());
+        assertNotSame(first, pool.acquire(3, 4));
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    void acquire_otherShape_allocatesNewBuffer() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[][] first = pool.acquire(3, 4);
+        pool.release(first);
+
+        double[][] other = pool.acquire(4, 3);
+        assertNotSame(first, other);
+        assertEquals(4, other.length);
+        assertEquals(3, other[0].length);
+    }
+
+    @Test
+    void acquireZeroed_recycledBuffer_isCleared() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[][] first = pool.acquire(2, 2);
+        first[0][0] = 7;
+        first[1][1] = -3;
+        pool.release(first);
+
+        double[][] again = pool.acquireZeroed(2, 2);
+        assertSame(first, again);
+        assertArrayEquals(new double[]{0, 0}, again[0]);
+        assertArrayEquals(new double[]{0, 0}, again[1]);
+    }
+
+    //arrays the pool did not hand out belong to someone else and are never reused
+    @Test
+    void release_foreignBuffer_isIgnored() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[][] foreign = new double[2][2];
+        pool.release(foreign);
+
+        assertNotSame(foreign, pool.acquire(2, 2));
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void release_overCapacity_dropsBuffer() {
+        BufferPool pool = new BufferPool(2 * 2 * Double.BYTES);
+        double[][] a = pool.acquire(2, 2);
+        double[][] b = pool.acquire(2, 2);
+        pool.release(a);
+        pool.release(b);
+
+        assertEquals(2 * 2 * Double.BYTES, pool.getPooledBytes());
+        assertSame(a, pool.acquire(2, 2));
+        assertNotSame(b, pool.acquire(2, 2));
+    }
+
+    @Test
+    void release_twice_keepsBufferOnce() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[][] a = pool.acquire(2, 2);
+        pool.release(a);
+        pool.release(a);
+
+        assertSame(a, pool.acquire(2, 2));
+        assertNotSame(a, pool.acquire(2, 2));
+    }
+
+    @Test
+    void adopt_thenRelease_reusesForeignBuffer() {
+        BufferPool pool = new BufferPool(1 << 20);
+        double[][] foreign = new double[2][2];
+        pool.adopt(foreign);
+        assertTrue(pool.owns(foreign));
+        pool.release(foreign);
+
+        assertSame(foreign, pool.acquire(2, 2));
+    }
+}
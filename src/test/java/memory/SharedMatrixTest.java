@@ -191,4 +191,218 @@ public class SharedMatrixTest {
         assertArrayEquals(new double[]{1, 2, 3}, result[0], 0.001);
         assertArrayEquals(new double[]{4, 5, 6}, result[1], 0.001);
     }
+
+    //rows are views into one contiguous array, so changing one row must not leak into its neighbours
+    @Test
+    void rowViews_areIndependent() {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2}, {3, 4}, {5, 6}});
+        m.get(1).negate();
+        assertArrayEquals(new double[]{1, 2}, m.readRowMajor()[0]);
+        assertArrayEquals(new double[]{-3, -4}, m.readRowMajor()[1]);
+        assertArrayEquals(new double[]{5, 6}, m.readRowMajor()[2]);
+    }
+
+    @Test
+    void loadRowMajor_copiesInput() {
+        double[][] input = {{1, 2}, {3, 4}};
+        SharedMatrix m = new SharedMatrix();
+        m.loadRowMajor(input);
+        input[0][0] = 100;
+        assertEquals(1, m.get(0).get(0));
+    }
+
+    //a row that is multiplied changes its length, it must leave the shared storage without touching the other rows
+    @Test
+    void vecMatMul_onRowView_doesNotCorruptOtherRows() {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{1, 1, 1}, {1, 1, 1}});
+        m.get(0).vecMatMul(right);
+        assertArrayEquals(new double[]{3, 3, 3}, new double[]{m.get(0).get(0), m.get(0).get(1), m.get(0).get(2)});
+        assertEquals(2, m.get(1).length());
+        assertEquals(3, m.get(1).get(0));
+        assertEquals(4, m.get(1).get(1));
+    }
+
+    @Test
+    void multiplyTile_dimensionMismatch_throws() {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2, 3}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{1}, {2}});
+        double[][] out = new double[1][1];
+        assertThrows(IllegalArgumentException.class, () -> left.multiplyTile(0, 1, 0, 1, 0, 2, right, out));
+    }
+
+    @Test
+    void transpose_flipsOrientationWithoutMovingData() {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        m.transpose();
+        assertEquals(VectorOrientation.COLUMN_MAJOR, m.getOrientation());
+        double[][] out = m.readRowMajor();
+        assertArrayEquals(new double[]{1, 4}, out[0]);
+        assertArrayEquals(new double[]{3, 6}, out[2]);
+        //the storage itself is still the original rows
+        assertArrayEquals(new double[]{1, 2, 3}, m.readStorage()[0]);
+    }
+
+    //A * T(B) where T(B) is kept column-major
+    @Test
+    void multiplyTile_columnMajorRight_usesColumns() {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{5, 6}, {7, 8}, {9, 10}});
+        right.transpose();
+        double[][] out = new double[2][3];
+        left.multiplyTile(0, 2, 0, 3, 0, 2, right, out);
+        assertArrayEquals(new double[]{17, 23, 29}, out[0], 0.001);
+        assertArrayEquals(new double[]{39, 53, 67}, out[1], 0.001);
+    }
+
+    //a writer on one of the right vectors sends the tile to the locked path, which waits for it
+    @Test
+    void multiplyTile_rightVectorWriteLocked_waitsAndThenMultiplies() throws Exception {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{1, 0}, {0, 1}});
+        double[][] out = new double[2][2];
+        right.get(1).writeLock();
+        Thread worker = new Thread(() -> left.multiplyTile(0, 2, 0, 2, 0, 2, right, out));
+        try {
+            worker.start();
+            worker.join(100);
+            assertTrue(worker.isAlive());
+            assertArrayEquals(new double[]{0, 0}, out[0]);
+        }
+        finally {
+            right.get(1).writeUnlock();
+        }
+        worker.join();
+        assertArrayEquals(new double[]{1, 2}, out[0], 0.001);
+        assertArrayEquals(new double[]{3, 4}, out[1], 0.001);
+    }
+
+    //vector 0 gives the layout, so a writer on it holds back even a tile that does not read it
+    @Test
+    void multiplyTile_vectorZeroWriteLocked_waitsEvenOutsideTheSlice() throws Exception {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{1, 0}, {0, 1}});
+        double[][] out = new double[2][2];
+        right.get(0).writeLock();
+        //only the inner slice [1, 2) is summed, which reads right row 1 alone
+        Thread worker = new Thread(() -> left.multiplyTile(0, 2, 0, 2, 1, 2, right, out));
+        try {
+            worker.start();
+            worker.join(100);
+            assertTrue(worker.isAlive());
+        }
+        finally {
+            right.get(0).writeUnlock();
+        }
+        worker.join();
+        assertArrayEquals(new double[]{0, 2}, out[0], 0.001);
+        assertArrayEquals(new double[]{0, 4}, out[1], 0.001);
+    }
+
+    @Test
+    void multiplyTile_privateRight_accumulatesIntoOut() {
+        SharedMatrix left = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        SharedMatrix right = new SharedMatrix(new double[][]{{5, 6, 7}, {8, 9, 10}});
+        double[][] out = {{1, 1, 1}, {0, 0, 0}};
+        left.multiplyTile(0, 2, 1, 3, 0, 2, right, out, 2.0, true);
+        assertArrayEquals(new double[]{1, 49, 55}, out[0], 0.001);
+        assertArrayEquals(new double[]{0, 108, 122}, out[1], 0.001);
+    }
+
+    //ownership transfer: adopted rows are used as is and handed back without a copy
+    @Test
+    void adoptRowMajor_thenDetach_returnsSameArrays() {
+        double[][] input = {{1, 2}, {3, 4}};
+        SharedMatrix m = new SharedMatrix();
+        m.adoptRowMajor(input);
+        m.get(0).negate();
+        assertEquals(-1, input[0][0]);
+        double[][] out = m.detachStorage();
+        assertSame(input[0], out[0]);
+        assertSame(input[1], out[1]);
+        assertEquals(0, m.length());
+    }
+
+    @Test
+    void release_dropsVectorsWithoutTouchingThem() {
+        double[][] input = {{1, 2}, {3, 4}};
+        SharedMatrix m = new SharedMatrix();
+        m.adoptRowMajor(input);
+        m.release();
+        assertEquals(0, m.length());
+        assertArrayEquals(new double[]{1, 2}, input[0]);
+    }
+
+    //rows packed into one array cannot be given away, they are copied out instead
+    @Test
+    void detachStorage_copiesViewsOfSharedArray() {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        double[][] out = m.detachStorage();
+        assertArrayEquals(new double[]{1, 2}, out[0]);
+        assertArrayEquals(new double[]{3, 4}, out[1]);
+        assertEquals(2, out[0].length);
+    }
+
+    //tiles over rows, columns and inner slices, each slice into its own buffer, must add up to the product
+    @Test
+    void multiplyTile_tilesAndSlicesAddUpToProduct() {
+        java.util.Random rnd = new java.util.Random(11);
+        int m = 5, k = 9, n = 70;
+        double[][] a = new double[m][k];
+        double[][] b = new double[k][n];
+        for (int i = 0; i < m; i++) for (int p = 0; p < k; p++) a[i][p] = rnd.nextDouble() - 0.5;
+        for (int p = 0; p < k; p++) for (int j = 0; j < n; j++) b[p][j] = rnd.nextDouble() - 0.5;
+
+        for (boolean columnMajor : new boolean[]{false, true}) {
+            SharedMatrix left = new SharedMatrix(a);
+            SharedMatrix right = new SharedMatrix();
+            if (columnMajor) {
+                right.loadColumnMajor(b);
+            }
+            else {
+                right.loadRowMajor(b);
+            }
+            double[][] out = new double[m][n];
+            double[][] partial = new double[m][n];
+            int[] rows = {0, 2, m};
+            int[] cols = {0, 33, n};
+            for (int r = 0; r < 2; r++) {
+                for (int c = 0; c < 2; c++) {
+                    left.multiplyTile(rows[r], rows[r + 1], cols[c], cols[c + 1], 0, 4, right, out);
+                    left.multiplyTile(rows[r], rows[r + 1], cols[c], cols[c + 1], 4, k, right, partial);
+                }
+            }
+            SharedMatrix.addRows(out, partial, 0, m);
+            for (int i = 0; i < m; i++) {
+                for (int j = 0; j < n; j++) {
+                    double expected = 0;
+                    for (int p = 0; p < k; p++) expected += a[i][p] * b[p][j];
+                    assertEquals(expected, out[i][j], 1e-9);
+                }
+            }
+            //the operands are only read
+            assertArrayEquals(a[1], left.readRowMajor()[1]);
+        }
+    }
+
+    //the inner and column dimensions cross the packed panel borders of BlockedGemm
+    @Test
+    void multiplyTile_largerThanOnePanel_matchesNaiveProduct() {
+        java.util.Random rnd = new java.util.Random(5);
+        int m = 7, k = BlockedGemm.KC + 3, n = BlockedGemm.NC + 5;
+        double[][] a = new double[m][k];
+        double[][] b = new double[k][n];
+        for (int i = 0; i < m; i++) for (int p = 0; p < k; p++) a[i][p] = rnd.nextDouble() - 0.5;
+        for (int p = 0; p < k; p++) for (int j = 0; j < n; j++) b[p][j] = rnd.nextDouble() - 0.5;
+
+        double[][] out = new double[m][n];
+        new SharedMatrix(a).multiplyTile(0, m, 0, n, 0, k, new SharedMatrix(b), out, 1.0, true);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                double expected = 0;
+                for (int p = 0; p < k; p++) expected += a[i][p] * b[p][j];
+                assertEquals(expected, out[i][j], 1e-9);
+            }
+        }
+    }
 }
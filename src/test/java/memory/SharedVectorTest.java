@@ -163,7 +163,118 @@ public class SharedVectorTest {
         assertEquals(7.0, v.get(0), 0.001);
         assertEquals(10.0, v.get(1), 0.001);
     }
-}
-    
 
-    
\ No newline at end of file
+    //views over a shared array
+    @Test
+    void view_readsWithOffsetAndStride() {
+        double[] data = {1, 2, 3, 4, 5, 6};
+        SharedVector col = new SharedVector(data, 1, 3, 2, VectorOrientation.COLUMN_MAJOR);
+        assertEquals(3, col.length());
+        assertEquals(2, col.get(0));
+        assertEquals(4, col.get(1));
+        assertEquals(6, col.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> col.get(3));
+    }
+
+    @Test
+    void view_outOfBackingArray_throws() {
+        double[] data = {1, 2, 3};
+        assertThrows(IllegalArgumentException.class, () -> new SharedVector(data, 2, 2, 1, VectorOrientation.ROW_MAJOR));
+        assertThrows(IllegalArgumentException.class, () -> new SharedVector(data, 0, 2, 0, VectorOrientation.ROW_MAJOR));
+    }
+
+    @Test
+    void view_addWritesOnlyItsOwnSlice() {
+        double[] data = {1, 1, 1, 1};
+        SharedVector first = new SharedVector(data, 0, 2, 1, VectorOrientation.ROW_MAJOR);
+        SharedVector second = new SharedVector(data, 2, 2, 1, VectorOrientation.ROW_MAJOR);
+        first.add(new SharedVector(new double[]{1, 2}, VectorOrientation.ROW_MAJOR));
+        assertArrayEquals(new double[]{2, 3, 1, 1}, data);
+        assertEquals(1, second.get(0));
+    }
+
+    //bulk kernels must give the same results for strided and contiguous vectors
+    @Test
+    void dot_andAdd_withStridedView() {
+        double[] data = {1, 10, 2, 20, 3, 30};
+        SharedVector strided = new SharedVector(data, 0, 3, 2, VectorOrientation.ROW_MAJOR);
+        SharedVector plain = new SharedVector(new double[]{4, 5, 6}, VectorOrientation.ROW_MAJOR);
+        assertEquals(32.0, plain.dot(strided), 0.001);
+        strided.add(plain);
+        assertArrayEquals(new double[]{5, 10, 7, 20, 9, 30}, data, 0.001);
+    }
+
+    //the lock is not reentrant, a row multiplied by its own matrix must not lock itself twice
+    @Test
+    void vecMatMul_rowOfSameMatrix_doesNotDeadlock() throws Exception {
+        SharedMatrix m = new SharedMatrix(new double[][]{{1, 2}, {3, 4}});
+        Thread t = new Thread(() -> m.get(0).vecMatMul(m));
+        t.start();
+        t.join(1000);
+        assertFalse(t.isAlive(), "vecMatMul deadlocked");
+        assertEquals(7.0, m.get(0).get(0), 0.001);
+        assertEquals(10.0, m.get(0).get(1), 0.001);
+    }
+
+    //optimistic reads that race with a writer must still return a value that was really stored
+    @Test
+    void get_optimisticReadDuringWrites_returnsStoredValues() throws Exception {
+        SharedVector v = new SharedVector(new double[]{1, 1, 1}, VectorOrientation.ROW_MAJOR);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 10000; i++) {
+                v.negate();
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(1.0, Math.abs(v.get(i % 3)), 0.0);
+        }
+        writer.join();
+    }
+
+    //dot only reads, so a reader holding the lock must not block it
+    @Test
+    void dot_whileOtherReaderHoldsLock_doesNotBlock() throws Exception {
+        SharedVector a = new SharedVector(new double[]{1, 2}, VectorOrientation.ROW_MAJOR);
+        SharedVector b = new SharedVector(new double[]{3, 4}, VectorOrientation.ROW_MAJOR);
+        a.readLock();
+        try {
+            final double[] res = new double[1];
+            Thread t = new Thread(() -> res[0] = a.dot(b));
+            t.start();
+            t.join(1000);
+            assertFalse(t.isAlive(), "dot blocked on a read lock");
+            assertEquals(11.0, res[0], 0.001);
+        }
+        finally {
+            a.readUnlock();
+        }
+    }
+
+    //a writer holding the lock forces the locked path, which has to wait for it
+    @Test
+    void dot_waitsForWriter() throws Exception {
+        SharedVector a = new SharedVector(new double[]{1, 2}, VectorOrientation.ROW_MAJOR);
+        SharedVector b = new SharedVector(new double[]{3, 4}, VectorOrientation.ROW_MAJOR);
+        a.writeLock();
+        final double[] res = new double[1];
+        Thread t = new Thread(() -> res[0] = a.dot(b));
+        t.start();
+        Thread.sleep(50);
+        assertTrue(t.isAlive(), "dot should wait for the writer");
+        a.writeUnlock();
+        t.join(1000);
+        assertFalse(t.isAlive());
+        assertEquals(11.0, res[0], 0.001);
+    }
+
+    //lock ids come from one sequence shared with SharedMatrix, so they never tie
+    @Test
+    void lockOrder_isUniqueAndIncreasing() {
+        SharedVector a = new SharedVector(new double[]{1}, VectorOrientation.ROW_MAJOR);
+        SharedMatrix m = new SharedMatrix();
+        SharedVector b = new SharedVector(new double[]{1}, VectorOrientation.ROW_MAJOR);
+        assertTrue(a.lockOrder() < m.lockOrder());
+        assertTrue(m.lockOrder() < b.lockOrder());
+    }
+}
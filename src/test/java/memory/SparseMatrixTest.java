@@ -0,0 +1,82 @@
+package memory;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+public class SparseMatrixTest {
+
+    //about 10% nonzeros
+    private static double[][] sparse(Random rnd, int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (rnd.nextInt(10) == 0) {
+                    m[i][j] = rnd.nextInt(9) - 4;
+                }
+            }
+        }
+        return m;
+    }
+
+    private static double[][] naiveProduct(double[][] a, double[][] b) {
+        double[][] c = new double[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++)
+            for (int k = 0; k < b.length; k++)
+                for (int j = 0; j < b[0].length; j++)
+                    c[i][j] += a[i][k] * b[k][j];
+        return c;
+    }
+
+    @Test
+    void fromDense_roundTrips() {
+        double[][] m = {{0, 1, 0}, {0, 0, 0}, {2, 0, 3}};
+        SparseMatrix s = SparseMatrix.fromDense(m);
+        assertEquals(3, s.nonZeros());
+        assertArrayEquals(m, s.toDense());
+    }
+
+    @Test
+    void isSparse_respectsThreshold() {
+        double[][] m = {{0, 1}, {0, 0}};
+        assertTrue(SparseMatrix.isSparse(m, 0.25));
+        assertFalse(SparseMatrix.isSparse(m, 0.1));
+        assertFalse(SparseMatrix.isSparse(new double[0][0], 0.5));
+    }
+
+    @Test
+    void kernels_matchDenseProducts() {
+        Random rnd = new Random(5);
+        double[][] a = sparse(rnd, 9, 13);
+        double[][] b = sparse(rnd, 13, 6);
+        double[][] expected = naiveProduct(a, b);
+        SparseMatrix sa = SparseMatrix.fromDense(a);
+        SparseMatrix sb = SparseMatrix.fromDense(b);
+
+        double[][] out = new double[9][6];
+        sa.multiplyDenseRows(0, 9, b, out);
+        assertArrayEquals(expected, out);
+
+        out = new double[9][6];
+        sa.multiplySparseRows(0, 4, sb, out);
+        sa.multiplySparseRows(4, 9, sb, out);
+        assertArrayEquals(expected, out);
+
+        out = new double[9][6];
+        sb.multiplyByDenseRows(a, 0, 9, out);
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    void addToRows_addsOnlyNonZeros() {
+        double[][] dense = {{1, 1}, {1, 1}};
+        SparseMatrix.fromDense(new double[][]{{0, 5}, {0, 0}}).addToRows(0, 2, dense);
+        assertArrayEquals(new double[][]{{1, 6}, {1, 1}}, dense);
+    }
+
+    @Test
+    void multiply_dimensionMismatch_throws() {
+        SparseMatrix s = SparseMatrix.fromDense(new double[][]{{1, 0, 0}});
+        assertThrows(IllegalArgumentException.class, () -> s.multiplyDenseRows(0, 1, new double[][]{{1}, {2}}, new double[1][1]));
+    }
+}
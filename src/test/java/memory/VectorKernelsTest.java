@@ -0,0 +1,76 @@
+package memory;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+public class VectorKernelsTest {
+
+    private final KernelSet scalar = new ScalarKernels();
+    private final KernelSet simd = new SimdKernels();
+
+    //odd length so the vector loop and the scalar tail both run
+    private static final int N = 37;
+
+    private static double[] random(Random rnd, int n) {
+        double[] a = new double[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = rnd.nextDouble() - 0.5;
+        }
+        return a;
+    }
+
+    @Test
+    void select_auto_picksSimdWhenModulePresent_unknownFallsBackToScalar() {
+        //surefire runs with --add-modules jdk.incubator.vector
+        assertTrue(VectorKernels.select("auto") instanceof SimdKernels);
+        assertTrue(VectorKernels.select("scalar") instanceof ScalarKernels);
+        assertTrue(VectorKernels.select("gpu") instanceof ScalarKernels);
+    }
+
+    @Test
+    void addAndNegate_simdMatchesScalar() {
+        Random rnd = new Random(1);
+        double[] x = random(rnd, N + 3);
+        double[] y = random(rnd, N + 3);
+        double[] a = x.clone();
+        double[] b = x.clone();
+        scalar.add(a, 1, 1, y, 2, 1, N);
+        simd.add(b, 1, 1, y, 2, 1, N);
+        assertArrayEquals(a, b, 0.0);
+        scalar.negate(a, 0, 1, N);
+        simd.negate(b, 0, 1, N);
+        assertArrayEquals(a, b, 0.0);
+    }
+
+    @Test
+    void dotAndAxpy_simdMatchesScalar() {
+        Random rnd = new Random(2);
+        double[] x = random(rnd, N);
+        double[] y = random(rnd, N);
+        assertEquals(scalar.dot(x, 0, 1, y, 0, 1, N), simd.dot(x, 0, 1, y, 0, 1, N), 1e-12);
+
+        double[] a = y.clone();
+        double[] b = y.clone();
+        scalar.axpy(1.5, x, 0, 1, a, 0, N);
+        simd.axpy(1.5, x, 0, 1, b, 0, N);
+        assertArrayEquals(a, b, 1e-12);
+    }
+
+    @Test
+    void axpy4_simdMatchesScalar() {
+        Random rnd = new Random(3);
+        double[] row = random(rnd, N);
+        double[][] c1 = new double[4][];
+        double[][] c2 = new double[4][];
+        for (int r = 0; r < 4; r++) {
+            c1[r] = random(rnd, N + 1);
+            c2[r] = c1[r].clone();
+        }
+        scalar.axpy4(1, 2, 3, 4, row, 0, c1[0], c1[1], c1[2], c1[3], 1, N);
+        simd.axpy4(1, 2, 3, 4, row, 0, c2[0], c2[1], c2[2], c2[3], 1, N);
+        for (int r = 0; r < 4; r++) {
+            assertArrayEquals(c1[r], c2[r], 1e-12);
+        }
+    }
+}
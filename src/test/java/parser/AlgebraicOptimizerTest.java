@@ -0,0 +1,81 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AlgebraicOptimizerTest {
+
+    private static ComputationNode leaf() {
+        return new ComputationNode(new double[][]{{1, 2}, {3, 4}});
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    void optimize_cancelsInvolutions() {
+        ComputationNode a = leaf();
+        AlgebraicOptimizer opt = new AlgebraicOptimizer();
+        ComputationNode root = opt.optimize(node(ComputationNodeType.NEGATE, node(ComputationNodeType.NEGATE,
+                node(ComputationNodeType.TRANSPOSE, node(ComputationNodeType.TRANSPOSE, a)))));
+        assertSame(a, root);
+        assertEquals(1, opt.getFiredRules().get(AlgebraicOptimizer.DOUBLE_TRANSPOSE));
+        assertEquals(1, opt.getFiredRules().get(AlgebraicOptimizer.DOUBLE_NEGATE));
+    }
+
+    @Test
+    void optimize_foldsNegationsIntoProductScale() {
+        ComputationNode a = leaf(), b = leaf();
+        AlgebraicOptimizer opt = new AlgebraicOptimizer();
+        //-((-A) * B) is A * B
+        ComputationNode root = opt.optimize(node(ComputationNodeType.NEGATE,
+                node(ComputationNodeType.MULTIPLY, node(ComputationNodeType.NEGATE, a), b)));
+        assertEquals(ComputationNodeType.MULTIPLY, root.getNodeType());
+        assertSame(a, root.getChildren().get(0));
+        assertSame(b, root.getChildren().get(1));
+        assertEquals(1.0, root.getScale());
+        assertTrue(opt.getReport().contains(AlgebraicOptimizer.NEGATE_PRODUCT));
+    }
+
+    @Test
+    void optimize_pushesTransposeOnlyWhenItCancels() {
+        ComputationNode a = leaf(), b = leaf();
+        AlgebraicOptimizer opt = new AlgebraicOptimizer();
+        //T(T(A) * B) is T(B) * A
+        ComputationNode root = opt.optimize(node(ComputationNodeType.TRANSPOSE,
+                node(ComputationNodeType.MULTIPLY, node(ComputationNodeType.TRANSPOSE, a), b)));
+        assertEquals(ComputationNodeType.MULTIPLY, root.getNodeType());
+        assertEquals(ComputationNodeType.TRANSPOSE, root.getChildren().get(0).getNodeType());
+        assertSame(b, root.getChildren().get(0).getChildren().get(0));
+        assertSame(a, root.getChildren().get(1));
+
+        //T(A * B) stays, the transpose of the result is free
+        ComputationNode plain = node(ComputationNodeType.TRANSPOSE, node(ComputationNodeType.MULTIPLY, leaf(), leaf()));
+        assertSame(plain, new AlgebraicOptimizer().optimize(plain));
+    }
+
+    @Test
+    void optimize_mergesNegatedSummands() {
+        ComputationNode a = leaf(), b = leaf();
+        AlgebraicOptimizer opt = new AlgebraicOptimizer();
+        ComputationNode root = opt.optimize(node(ComputationNodeType.ADD,
+                node(ComputationNodeType.NEGATE, a), node(ComputationNodeType.NEGATE, b)));
+        assertEquals(ComputationNodeType.NEGATE, root.getNodeType());
+        ComputationNode sum = root.getChildren().get(0);
+        assertSame(a, sum.getChildren().get(0));
+        assertSame(b, sum.getChildren().get(1));
+    }
+
+    @Test
+    void optimize_nothingToDo_reportsNoRules() {
+        ComputationNode sum = node(ComputationNodeType.ADD, leaf(), leaf());
+        AlgebraicOptimizer opt = new AlgebraicOptimizer();
+        assertSame(sum, opt.optimize(sum));
+        assertTrue(opt.getFiredRules().isEmpty());
+        assertTrue(opt.getReport().contains("no rules fired"));
+    }
+}
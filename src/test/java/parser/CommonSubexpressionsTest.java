@@ -0,0 +1,48 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommonSubexpressionsTest {
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    //T(X) * X with X written out twice
+    @Test
+    void eliminate_equalLiteralsBecomeOneNode() {
+        ComputationNode x1 = new ComputationNode(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode x2 = new ComputationNode(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode t = node(ComputationNodeType.TRANSPOSE, x1);
+        ComputationNode root = node(ComputationNodeType.MULTIPLY, t, x2);
+        assertEquals(1, CommonSubexpressions.eliminate(root));
+        assertSame(t.getChildren().get(0), root.getChildren().get(1));
+    }
+
+    @Test
+    void eliminate_equalSubtreesAreShared() {
+        ComputationNode a = node(ComputationNodeType.NEGATE, new ComputationNode(new double[][]{{5}}));
+        ComputationNode b = node(ComputationNodeType.NEGATE, new ComputationNode(new double[][]{{5}}));
+        ComputationNode root = node(ComputationNodeType.ADD, a, b);
+        //the second literal and the second negate
+        assertEquals(2, CommonSubexpressions.eliminate(root));
+        assertSame(root.getChildren().get(0), root.getChildren().get(1));
+    }
+
+    @Test
+    void eliminate_differentContentOrOperandOrderIsKept() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}});
+        ComputationNode b = new ComputationNode(new double[][]{{2, 1}});
+        ComputationNode ab = node(ComputationNodeType.ADD, a, b);
+        ComputationNode ba = node(ComputationNodeType.ADD,
+                new ComputationNode(new double[][]{{2, 1}}), new ComputationNode(new double[][]{{1, 2}}));
+        ComputationNode root = node(ComputationNodeType.ADD, ab, ba);
+        assertEquals(2, CommonSubexpressions.eliminate(root));
+        assertNotSame(root.getChildren().get(0), root.getChildren().get(1));
+        assertSame(ab.getChildren().get(0), root.getChildren().get(1).getChildren().get(1));
+    }
+}
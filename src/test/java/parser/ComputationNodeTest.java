@@ -0,0 +1,86 @@
+package parser;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ComputationNodeTest {
+
+    private static ComputationNode leaf(int rows, int cols) {
+        return new ComputationNode(new double[rows][cols]);
+    }
+
+    private static ComputationNode node(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    @Test
+    void associativeNesting_addIsNestedLeftToRight() {
+        ComputationNode a = leaf(2, 2), b = leaf(2, 2), c = leaf(2, 2);
+        ComputationNode sum = node(ComputationNodeType.ADD, a, b, c);
+        sum.associativeNesting();
+        ComputationNode inner = sum.getChildren().get(0);
+        assertSame(c, sum.getChildren().get(1));
+        assertSame(a, inner.getChildren().get(0));
+        assertSame(b, inner.getChildren().get(1));
+    }
+
+    //50x5 * 5x100 * 100x10: A(BC) needs 7500 multiplications, (AB)C needs 75000
+    @Test
+    void associativeNesting_multiplyChainPicksCheapestOrder() {
+        ComputationNode a = leaf(50, 5), b = leaf(5, 100), c = leaf(100, 10);
+        ComputationNode product = node(ComputationNodeType.MULTIPLY, a, b, c);
+        product.associativeNesting();
+        assertSame(a, product.getChildren().get(0));
+        ComputationNode bc = product.getChildren().get(1);
+        assertSame(b, bc.getChildren().get(0));
+        assertSame(c, bc.getChildren().get(1));
+        assertArrayEquals(new int[]{50, 10}, product.getShape());
+    }
+
+    //10x100 * 100x5 * 5x50: here the left order is the cheap one
+    @Test
+    void associativeNesting_multiplyChainKeepsLeftOrderWhenCheapest() {
+        ComputationNode a = leaf(10, 100), b = leaf(100, 5), c = leaf(5, 50);
+        ComputationNode product = node(ComputationNodeType.MULTIPLY, a, b, c);
+        product.associativeNesting();
+        assertSame(c, product.getChildren().get(1));
+        ComputationNode ab = product.getChildren().get(0);
+        assertSame(a, ab.getChildren().get(0));
+        assertSame(b, ab.getChildren().get(1));
+    }
+
+    //shapes that do not chain are left for the engine to report
+    @Test
+    void associativeNesting_mismatchedChainFallsBackToLeftNesting() {
+        ComputationNode a = leaf(2, 3), b = leaf(4, 5), c = leaf(5, 1);
+        ComputationNode product = node(ComputationNodeType.MULTIPLY, a, b, c);
+        product.associativeNesting();
+        assertSame(c, product.getChildren().get(1));
+        assertNull(product.getShape());
+    }
+
+    @Test
+    void getMatrix_transposedNode_keepsItsStoredLayout() {
+        double[][] stored = {{1, 2, 3}, {4, 5, 6}};
+        ComputationNode node = new ComputationNode(stored);
+        node.resolve(stored, true);
+
+        double[][] m = node.getMatrix();
+        assertEquals(3, m.length);
+        assertArrayEquals(new double[]{3, 6}, m[2]);
+        assertTrue(node.isTransposed());
+        assertSame(stored, node.getStoredMatrix());
+    }
+
+    @Test
+    void getShape_followsOperators() {
+        ComputationNode t = node(ComputationNodeType.TRANSPOSE, leaf(2, 3));
+        ComputationNode sum = node(ComputationNodeType.ADD, t, node(ComputationNodeType.NEGATE, leaf(3, 2)));
+        ComputationNode product = node(ComputationNodeType.MULTIPLY, sum, leaf(2, 7));
+        assertArrayEquals(new int[]{3, 2}, sum.getShape());
+        assertArrayEquals(new int[]{3, 7}, product.getShape());
+    }
+}
@@ -5,7 +5,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 public class TiredExecuterTest {
@@ -111,4 +113,154 @@ public class TiredExecuterTest {
         t.join(2000);
         assertFalse(t.isAlive(), "shutdown did not finish");
     }
+
+    @Test
+    void workStealing_submitAll_allTasksExecutedExactlyOnce() throws Exception {
+        TiredExecutor ex = new TiredExecutor(4, ExecutionMode.WORK_STEALING);
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+        for (int round = 0; round < 5; round++) {
+            ex.submitAll(tasks);
+        }
+        assertEquals(5000, counter.get(), "Not all tasks executed exactly once");
+        ex.shutdown();
+    }
+    @Test
+    void workStealing_submit_doesNotBlockWhenWorkersBusy() throws Exception {
+        TiredExecutor ex = new TiredExecutor(1, ExecutionMode.WORK_STEALING);
+        CountDownLatch hold = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        ex.submit(() -> {
+            started.countDown();
+            try { hold.await(); } catch (InterruptedException ignored) {}
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS), "First task did not start");
+        CountDownLatch secondRan = new CountDownLatch(1);
+        ex.submit(secondRan::countDown);//queued, returns immediately
+        assertEquals(1, secondRan.getCount(), "Second task ran while the only worker was busy");
+        hold.countDown();
+        assertTrue(secondRan.await(1, TimeUnit.SECONDS), "Queued task did not run");
+        ex.shutdown();
+    }
+    @Test
+    void workStealing_idleWorkersStealFromBusyOne() throws Exception {
+        TiredExecutor ex = new TiredExecutor(2, ExecutionMode.WORK_STEALING);
+        CountDownLatch hold = new CountDownLatch(1);
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        CountDownLatch rest = new CountDownLatch(20);
+        //the blocker pins one worker; everything queued behind it must be stolen by the other
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            blockerStarted.countDown();
+            try { hold.await(); } catch (InterruptedException ignored) {}
+        });
+        for (int i = 0; i < 20; i++) {
+            tasks.add(rest::countDown);
+        }
+        Thread t = new Thread(() -> ex.submitAll(tasks));
+        t.start();
+        assertTrue(blockerStarted.await(1, TimeUnit.SECONDS), "Blocking task did not start");
+        assertTrue(rest.await(2, TimeUnit.SECONDS), "Queued tasks were not stolen by the idle worker");
+        hold.countDown();
+        t.join(2000);
+        assertFalse(t.isAlive(), "submitAll did not return after tasks finished");
+        ex.shutdown();
+    }
+
+    @Test
+    void submitAsync_doesNotBlockWhenNoIdleWorkers() throws Exception {
+        TiredExecutor ex = new TiredExecutor(1);
+        CountDownLatch hold = new CountDownLatch(1);
+        CompletableFuture<Void> first = ex.submitAsync(() -> {
+            try { hold.await(); } catch (InterruptedException ignored) {}
+        });
+        CountDownLatch secondRan = new CountDownLatch(1);
+        CompletableFuture<Void> second = ex.submitAsync(secondRan::countDown);//waits in the backlog
+        assertFalse(second.isDone(), "Second task completed while the only worker was busy");
+        hold.countDown();
+        second.get(1, TimeUnit.SECONDS);
+        assertTrue(first.isDone());
+        assertEquals(0, secondRan.getCount());
+        ex.shutdown();
+    }
+    @Test
+    void submitAllAsync_completesWithItsOwnBatch() throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            TiredExecutor ex = new TiredExecutor(2, mode);
+            CountDownLatch hold = new CountDownLatch(1);
+            CompletableFuture<Void> slow = ex.submitAsync(() -> {
+                try { hold.await(); } catch (InterruptedException ignored) {}
+            });
+            AtomicInteger counter = new AtomicInteger(0);
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                tasks.add(counter::incrementAndGet);
+            }
+            //does not wait for the unrelated slow task
+            ex.submitAllAsync(tasks).get(2, TimeUnit.SECONDS);
+            assertEquals(20, counter.get());
+            assertFalse(slow.isDone());
+            hold.countDown();
+            slow.get(1, TimeUnit.SECONDS);
+            ex.shutdown();
+        }
+    }
+    @Test
+    void submitAllAsync_failingTask_completesExceptionallyAndWorkerSurvives() throws Exception {
+        TiredExecutor ex = new TiredExecutor(1);
+        AtomicInteger counter = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> { throw new IllegalStateException("boom"); });
+        tasks.add(counter::incrementAndGet);
+        CompletableFuture<Void> batch = ex.submitAllAsync(tasks);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> batch.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(1, counter.get(), "The rest of the batch should still run");
+        //submitAll rethrows the failure itself
+        assertThrows(IllegalStateException.class, () -> ex.submitAll(List.of(() -> { throw new IllegalStateException("again"); })));
+        ex.submitAsync(counter::incrementAndGet).get(1, TimeUnit.SECONDS);
+        assertEquals(2, counter.get());
+        ex.shutdown();
+    }
+
+    @Test
+    void virtual_runsTasksOnVirtualThreadsAndKeepsStatistics() throws Exception {
+        TiredExecutor ex = new TiredExecutor(2, ExecutionMode.VIRTUAL);
+        AtomicInteger virtualRuns = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(() -> {
+                if (Thread.currentThread().isVirtual()) {
+                    virtualRuns.incrementAndGet();
+                }
+            });
+        }
+        ex.submitAll(tasks);
+        assertEquals(100, virtualRuns.get());
+        String report = ex.getWorkerReport();
+        assertTrue(report.contains("mode = VIRTUAL"), "Report should name the mode");
+        assertTrue(report.contains("Worker #1"), "Report should include worker 1");
+        ex.shutdown();
+    }
+    @Test
+    void virtual_capsConcurrentTasksAtNumThreads() throws Exception {
+        TiredExecutor ex = new TiredExecutor(3, ExecutionMode.VIRTUAL);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger peak = new AtomicInteger(0);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tasks.add(() -> {
+                int now = running.incrementAndGet();
+                peak.accumulateAndGet(now, Math::max);
+                try { Thread.sleep(5); } catch (InterruptedException ignored) {}
+                running.decrementAndGet();
+            });
+        }
+        ex.submitAll(tasks);
+        assertTrue(peak.get() <= 3, "More tasks ran at once than there are slots: " + peak.get());
+        ex.shutdown();
+    }
 }
@@ -0,0 +1,178 @@
+package spl.lae;
+import parser.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IncrementalEvaluatorTest {
+
+    private LinearAlgebraEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new LinearAlgebraEngine(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static double[][] random(Random rnd, int rows, int cols) {
+        double[][] m = new double[rows][cols];
+        for (double[] row : m) {
+            for (int j = 0; j < cols; j++) {
+                row[j] = rnd.nextInt(7) - 3;
+            }
+        }
+        return m;
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            c[i] = m[i].clone();
+        }
+        return c;
+    }
+
+    //T(A*B) + -(C*D), with A and B passed in so the expected value can be rebuilt from scratch
+    private static ComputationNode tree(double[][] a, double[][] b, double[][] c, double[][] d, ComputationNode[] leaves) {
+        leaves[0] = new ComputationNode(copy(a));
+        leaves[1] = new ComputationNode(copy(b));
+        return op(ComputationNodeType.ADD,
+                op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.MULTIPLY, leaves[0], leaves[1])),
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.MULTIPLY, new ComputationNode(copy(c)), new ComputationNode(copy(d)))));
+    }
+
+    private void assertMatchesFullRun(double[][] expectedA, double[][] b, double[][] c, double[][] d, double[][] result) {
+        ComputationNode fresh = tree(expectedA, b, c, d, new ComputationNode[2]);
+        engine.run(fresh);
+        double[][] expected = fresh.getMatrix();
+        assertEquals(expected.length, result.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], result[i], 1e-9);
+        }
+    }
+
+    @Test
+    void getResult_matchesFullEvaluation_andLeavesTreeIntact() {
+        Random rnd = new Random(1);
+        double[][] a = random(rnd, 6, 5), b = random(rnd, 5, 4), c = random(rnd, 4, 3), d = random(rnd, 3, 6);
+        ComputationNode[] leaves = new ComputationNode[2];
+        ComputationNode root = tree(a, b, c, d, leaves);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(engine, root);
+
+        assertMatchesFullRun(a, b, c, d, evaluator.getResult());
+        assertEquals(ComputationNodeType.ADD, root.getNodeType());
+        assertEquals(2, root.getChildren().size());
+    }
+
+    //a dense change recomputes only the path above the leaf: the product, the transpose and the sum
+    @Test
+    void updateLeaf_denseChange_recomputesAncestorPathOnly() {
+        Random rnd = new Random(2);
+        double[][] a = random(rnd, 6, 5), b = random(rnd, 5, 4), c = random(rnd, 4, 3), d = random(rnd, 3, 6);
+        ComputationNode[] leaves = new ComputationNode[2];
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(engine, tree(a, b, c, d, leaves));
+        long before = evaluator.getRecomputedCount();
+
+        double[][] a2 = random(rnd, 6, 5);
+        double[][] result = evaluator.updateLeaf(leaves[0], a2);
+
+        assertEquals(3, evaluator.getRecomputedCount() - before);
+        assertMatchesFullRun(a2, b, c, d, result);
+    }
+
+    @Test
+    void updateLeaf_sparseChange_updatesProductWithDelta() {
+        Random rnd = new Random(3);
+        double[][] a = random(rnd, 20, 20), b = random(rnd, 20, 20), c = random(rnd, 20, 20), d = random(rnd, 20, 20);
+        ComputationNode[] leaves = new ComputationNode[2];
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(engine, tree(a, b, c, d, leaves));
+
+        double[][] b2 = copy(b);
+        b2[3][7] += 5;
+        b2[11][2] -= 2;
+        double[][] result = evaluator.updateLeaf(leaves[1], b2);
+
+        assertEquals(1, evaluator.getDeltaUpdateCount());
+        assertMatchesFullRun(a, b2, c, d, result);
+    }
+
+    @Test
+    void updateLeafLowRank_keepsDeltaLowRankThroughProduct() {
+        Random rnd = new Random(4);
+        double[][] a = random(rnd, 12, 10), b = random(rnd, 10, 8), c = random(rnd, 8, 6), d = random(rnd, 6, 12);
+        ComputationNode[] leaves = new ComputationNode[2];
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(engine, tree(a, b, c, d, leaves));
+
+        double[][] u = random(rnd, 12, 1);
+        double[][] v = random(rnd, 10, 1);
+        double[][] result = evaluator.updateLeafLowRank(leaves[0], u, v);
+
+        double[][] a2 = copy(a);
+        for (int i = 0; i < 12; i++) {
+            for (int j = 0; j < 10; j++) {
+                a2[i][j] += u[i][0] * v[j][0];
+            }
+        }
+        assertEquals(1, evaluator.getDeltaUpdateCount());
+        assertMatchesFullRun(a2, b, c, d, result);
+
+        //a second change starts from the updated values
+        double[][] a3 = random(rnd, 12, 10);
+        assertMatchesFullRun(a3, b, c, d, evaluator.updateLeaf(leaves[0], a3));
+    }
+
+    @Test
+    void updateLeaf_unknownLeafOrOtherShape_throws() {
+        Random rnd = new Random(5);
+        double[][] a = random(rnd, 3, 3), b = random(rnd, 3, 3), c = random(rnd, 3, 3), d = random(rnd, 3, 3);
+        ComputationNode[] leaves = new ComputationNode[2];
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(engine, tree(a, b, c, d, leaves));
+
+        assertThrows(IllegalArgumentException.class, () -> evaluator.updateLeaf(new ComputationNode(copy(a)), a));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.updateLeaf(leaves[0], new double[][]{{1, 2}}));
+    }
+
+    //the scale the optimizer puts on a product holds for its first value and for its delta updates
+    @Test
+    void updateLeaf_scaledProduct_keepsScaleThroughDelta() {
+        Random rnd = new Random(6);
+        double[][] a = random(rnd, 15, 15), b = random(rnd, 15, 15);
+        ComputationNode left = new ComputationNode(copy(a));
+        ComputationNode right = new ComputationNode(copy(b));
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(left, right)), -2.0);
+        IncrementalEvaluator evaluator = new IncrementalEvaluator(engine, root);
+        assertScaledProduct(-2.0, a, b, evaluator.getResult());
+
+        double[][] b2 = copy(b);
+        b2[4][9] += 3;
+        double[][] result = evaluator.updateLeaf(right, b2);
+
+        assertEquals(1, evaluator.getDeltaUpdateCount());
+        assertScaledProduct(-2.0, a, b2, result);
+    }
+
+    private static void assertScaledProduct(double scale, double[][] a, double[][] b, double[][] result) {
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b[0].length; j++) {
+                double expected = 0;
+                for (int p = 0; p < b.length; p++) {
+                    expected += a[i][p] * b[p][j];
+                }
+                assertEquals(scale * expected, result[i][j], 1e-9);
+            }
+        }
+    }
+}
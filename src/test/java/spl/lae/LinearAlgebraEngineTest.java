@@ -2,6 +2,7 @@ package spl.lae;
 import spl.lae.LinearAlgebraEngine;
 import parser.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,6 +19,11 @@ public class LinearAlgebraEngineTest {
         engine = new LinearAlgebraEngine(4);
     }
 
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
   @Test
     void run_simpleAddition_computesCorrectResult() throws Exception {
         double[][] data1 = {{1.0, 2.0}};
@@ -108,4 +114,451 @@ public class LinearAlgebraEngineTest {
         assertSame(leaf, result);
         assertArrayEquals(data[0], result.getMatrix()[0]);
     }
-}
\ No newline at end of file
+
+    //mostly-zero operands go through the CSR kernels
+    @Test
+    void run_sparseOperands_computesSameResult() {
+        double[][] a = new double[20][20];
+        double[][] b = new double[20][20];
+        for (int i = 0; i < 20; i++) {
+            a[i][(i * 7) % 20] = i + 1;
+            b[i][(i * 3) % 20] = 2;
+        }
+        b[0][0] = 5;
+        List<ComputationNode> children = new ArrayList<>();
+        children.add(new ComputationNode(a));
+        children.add(new ComputationNode(b));
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, children);
+        engine.run(root);
+
+        double[][] result = root.getMatrix();
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                double expected = 0;
+                for (int k = 0; k < 20; k++) expected += a[i][k] * b[k][j];
+                assertEquals(expected, result[i][j], 0.001);
+            }
+        }
+    }
+
+    //transposes are kept as views, each consumer must still see the right values
+    @Test
+    void run_transposedOperands_inAddAndMultiply() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2, 3}, {4, 5, 6}});
+        ComputationNode b = new ComputationNode(new double[][]{{1, 0, 2}, {0, 1, 3}});
+        ComputationNode tb = new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(b)));
+        //A * T(B) is 2x2
+        ComputationNode product = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(a, tb)));
+        ComputationNode c = new ComputationNode(new double[][]{{1, 1}, {1, 1}});
+        ComputationNode tc = new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(c)));
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(tc, product)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(sum)));
+
+        engine.run(root);
+
+        double[][] result = root.getMatrix();
+        assertArrayEquals(new double[]{8, 17}, result[0], 0.001);
+        assertArrayEquals(new double[]{12, 24}, result[1], 0.001);
+    }
+
+    //a sparse transposed leaf is read in place for the density check and copied only for the CSR kernels
+    @Test
+    void run_sparseTransposedOperand_leavesTheLeafAsStored() {
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = new double[2][3];
+        b[1][2] = 7;
+        ComputationNode leafB = new ComputationNode(b);
+        //A * T(B) is 2x2, T(B) has a single non-zero at (2, 1)
+        ComputationNode root = op(ComputationNodeType.MULTIPLY, new ComputationNode(a),
+                op(ComputationNodeType.TRANSPOSE, leafB));
+
+        engine.run(root);
+
+        double[][] result = root.getMatrix();
+        assertArrayEquals(new double[]{0, 21}, result[0], 0.001);
+        assertArrayEquals(new double[]{0, 42}, result[1], 0.001);
+        assertSame(b, leafB.getStoredMatrix());
+        assertFalse(leafB.isTransposed());
+        assertArrayEquals(new double[]{0, 0, 7}, b[1], 0.001);
+    }
+
+    //few rows: the work is spread over column tiles, and over inner slices when the output is tiny
+    @Test
+    void run_multiplyWithFewRows_matchesNaiveProduct() {
+        java.util.Random rnd = new java.util.Random(3);
+        int[][] shapes = {{4, 1200, 600}, {2, 200000, 2}};
+        for (int[] shape : shapes) {
+            int m = shape[0], k = shape[1], n = shape[2];
+            double[][] a = new double[m][k];
+            double[][] b = new double[k][n];
+            for (int i = 0; i < m; i++) for (int p = 0; p < k; p++) a[i][p] = rnd.nextDouble() - 0.5;
+            for (int p = 0; p < k; p++) for (int j = 0; j < n; j++) b[p][j] = rnd.nextDouble() - 0.5;
+            double[][] expected = new double[m][n];
+            for (int i = 0; i < m; i++) for (int p = 0; p < k; p++) for (int j = 0; j < n; j++) expected[i][j] += a[i][p] * b[p][j];
+
+            ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY,
+                    new ArrayList<>(List.of(new ComputationNode(a), new ComputationNode(b))));
+            engine.run(root);
+            double[][] result = root.getMatrix();
+            for (int i = 0; i < m; i++) {
+                assertArrayEquals(expected[i], result[i], 1e-6);
+            }
+        }
+    }
+
+    //one engine, many trees: sequential runs and runs from several threads share the same pool
+    @Test
+    void run_engineIsReusableAndSafeForConcurrentRuns() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE,
+                    new ArrayList<>(List.of(new ComputationNode(new double[][]{{i, 1}}))));
+            engine.run(root);
+            assertArrayEquals(new double[]{-i, -1}, root.getMatrix()[0], 0.001);
+        }
+        int callers = 8;
+        ComputationNode[] roots = new ComputationNode[callers];
+        Thread[] threads = new Thread[callers];
+        for (int t = 0; t < callers; t++) {
+            final int id = t;
+            roots[t] = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(
+                    new ComputationNode(new double[][]{{id, id}, {id, id}}),
+                    new ComputationNode(new double[][]{{1, 2}, {3, 4}}))));
+            threads[t] = new Thread(() -> engine.run(roots[id]));
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        for (int t = 0; t < callers; t++) {
+            assertArrayEquals(new double[]{t + 1, t + 2}, roots[t].getMatrix()[0], 0.001);
+            assertArrayEquals(new double[]{t + 3, t + 4}, roots[t].getMatrix()[1], 0.001);
+        }
+    }
+
+    @Test
+    void run_afterClose_throws() {
+        engine.close();
+        engine.close();//idempotent
+        ComputationNode root = new ComputationNode(ComputationNodeType.NEGATE,
+                new ArrayList<>(List.of(new ComputationNode(new double[][]{{1}}))));
+        assertThrows(IllegalStateException.class, () -> engine.run(root));
+    }
+
+    //independent subtrees are evaluated side by side; the result must not depend on which finishes first
+    @Test
+    void run_wideTree_evaluatesIndependentSubtrees() {
+        int leaves = 16;
+        List<ComputationNode> level = new ArrayList<>();
+        double expected = 0;
+        for (int i = 0; i < leaves; i++) {
+            double[][] data = new double[40][40];
+            for (double[] row : data) java.util.Arrays.fill(row, i);
+            expected += (i % 2 == 0) ? i : -i;
+            ComputationNode leaf = new ComputationNode(data);
+            level.add(i % 2 == 0 ? leaf : new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>(List.of(leaf))));
+        }
+        while (level.size() > 1) {
+            List<ComputationNode> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                next.add(new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(level.get(i), level.get(i + 1)))));
+            }
+            level = next;
+        }
+        ComputationNode root = level.get(0);
+        engine.run(root);
+        double[][] result = root.getMatrix();
+        for (double[] row : result) {
+            for (double v : row) {
+                assertEquals(expected, v, 0.001);
+            }
+        }
+    }
+
+    //a failure deep in the tree reaches the caller with its own type and message
+    @Test
+    void run_failingSubtree_rethrowsOriginalException() {
+        ComputationNode bad = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(
+                new ComputationNode(new double[][]{{1, 2}}),
+                new ComputationNode(new double[][]{{1, 2, 3}}))));
+        ComputationNode good = new ComputationNode(ComputationNodeType.NEGATE,
+                new ArrayList<>(List.of(new ComputationNode(new double[][]{{1, 2}}))));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(good, bad)));
+        assertThrows(IllegalArgumentException.class, () -> engine.run(root));
+    }
+
+    //a long sum nested left-deep is one chain of thousands of nodes, it must neither recurse nor rescan the tree
+    @Test
+    void run_longNestedSum_resolvesEveryLevel() {
+        int operands = 20000;
+        List<ComputationNode> children = new ArrayList<>();
+        for (int i = 0; i < operands; i++) {
+            children.add(new ComputationNode(new double[][]{{1, i}}));
+        }
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, children);
+        root.associativeNesting();
+        assertEquals(2, root.getChildren().size());
+
+        engine.run(root);
+        double[][] result = root.getMatrix();
+        assertEquals(operands, result[0][0], 0.001);
+        assertEquals((double) operands * (operands - 1) / 2, result[0][1], 0.001);
+    }
+
+    //the planned parenthesization must give the same product as the written order
+    @Test
+    void run_plannedMultiplyChain_matchesLeftToRightProduct() {
+        java.util.Random rnd = new java.util.Random(5);
+        int[] dims = {30, 3, 40, 2, 25};
+        double[][][] ms = new double[dims.length - 1][][];
+        List<ComputationNode> operands = new ArrayList<>();
+        for (int i = 0; i < ms.length; i++) {
+            ms[i] = new double[dims[i]][dims[i + 1]];
+            for (double[] row : ms[i]) for (int j = 0; j < row.length; j++) row[j] = rnd.nextInt(5) - 2;
+            operands.add(new ComputationNode(ms[i]));
+        }
+        double[][] expected = ms[0];
+        for (int i = 1; i < ms.length; i++) {
+            double[][] next = new double[expected.length][ms[i][0].length];
+            for (int r = 0; r < expected.length; r++)
+                for (int p = 0; p < ms[i].length; p++)
+                    for (int c = 0; c < next[0].length; c++) next[r][c] += expected[r][p] * ms[i][p][c];
+            expected = next;
+        }
+        ComputationNode root = new ComputationNode(ComputationNodeType.MULTIPLY, operands);
+        root.associativeNesting();
+        engine.run(root);
+        double[][] result = root.getMatrix();
+        for (int r = 0; r < expected.length; r++) {
+            assertArrayEquals(expected[r], result[r], 0.001);
+        }
+    }
+
+    //S is used by three consumers, one of them twice; in-place operations must not leak between them
+    @Test
+    void run_sharedSubexpression_isEvaluatedOnceAndNotOverwritten() {
+        ComputationNode s = new ComputationNode(ComputationNodeType.NEGATE,
+                new ArrayList<>(List.of(new ComputationNode(new double[][]{{1, 2}, {3, 4}}))));
+        ComputationNode square = new ComputationNode(ComputationNodeType.MULTIPLY, new ArrayList<>(List.of(s, s)));
+        ComputationNode negated = new ComputationNode(ComputationNodeType.NEGATE, new ArrayList<>(List.of(s)));
+        ComputationNode transposed = new ComputationNode(ComputationNodeType.TRANSPOSE, new ArrayList<>(List.of(s)));
+        ComputationNode sum = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(square, negated)));
+        ComputationNode root = new ComputationNode(ComputationNodeType.ADD, new ArrayList<>(List.of(sum, transposed)));
+
+        engine.run(root);
+
+        //S = -[[1,2],[3,4]], S*S = [[7,10],[15,22]], -S = [[1,2],[3,4]], T(S) = [[-1,-3],[-2,-4]]
+        double[][] result = root.getMatrix();
+        assertArrayEquals(new double[]{7, 9}, result[0], 0.001);
+        assertArrayEquals(new double[]{16, 22}, result[1], 0.001);
+    }
+
+    //the rewritten tree, with a negation folded into a product, must evaluate to the same matrix
+    @Test
+    void run_optimizedTree_matchesLiteralEvaluation() {
+        double[][] a = {{1, 2, 0}, {0, 1, 3}};
+        double[][] b = {{2, 1}, {1, 0}, {4, 5}};
+        //-(T(T(B) * -(T(A)))) + A*B, each tree over its own copies of the leaves
+        java.util.function.Supplier<ComputationNode> build = () -> op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.TRANSPOSE, op(ComputationNodeType.MULTIPLY,
+                        op(ComputationNodeType.TRANSPOSE, new ComputationNode(copy(b))),
+                        op(ComputationNodeType.NEGATE, op(ComputationNodeType.TRANSPOSE, new ComputationNode(copy(a))))))),
+                op(ComputationNodeType.MULTIPLY, new ComputationNode(copy(a)), new ComputationNode(copy(b))));
+
+        ComputationNode literal = build.get();
+        engine.run(literal);
+        parser.AlgebraicOptimizer opt = new parser.AlgebraicOptimizer();
+        ComputationNode optimized = opt.optimize(build.get());
+        engine.run(optimized);
+
+        assertFalse(opt.getFiredRules().isEmpty());
+        double[][] expected = literal.getMatrix();
+        double[][] result = optimized.getMatrix();
+        //which is 2*A*B, A*B = [[4,1],[13,15]]
+        double[][] twice = {{8, 2}, {26, 30}};
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(twice[i], expected[i], 0.001);
+            assertArrayEquals(expected[i], result[i], 0.001);
+        }
+    }
+
+    //-(A + T(B) + -(C)) + T(D) runs as one fused sum, mixing layouts and signs
+    @Test
+    void run_fusedElementwiseChain_matchesNodeByNodeResult() {
+        double[][] a = {{1, 2, 3}, {4, 5, 6}};
+        double[][] b = {{1, 0}, {2, 1}, {0, 3}};
+        double[][] c = {{2, 2, 2}, {1, 1, 1}};
+        double[][] d = {{5, 6}, {7, 8}, {9, 10}};
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, op(ComputationNodeType.ADD,
+                        op(ComputationNodeType.ADD, new ComputationNode(a), op(ComputationNodeType.TRANSPOSE, new ComputationNode(b))),
+                        op(ComputationNodeType.NEGATE, new ComputationNode(c)))),
+                op(ComputationNodeType.TRANSPOSE, new ComputationNode(d)));
+
+        engine.run(root);
+        double[][] result = root.getMatrix();
+        assertArrayEquals(new double[]{0 + 5, -2 + 7, -1 + 9}, result[0], 0.001);
+        assertArrayEquals(new double[]{-3 + 6, -5 + 8, -8 + 10}, result[1], 0.001);
+    }
+
+    //an operand that appears in several terms of one chain must not be overwritten while it is read
+    @Test
+    void run_fusedChainWithRepeatedOperand_readsItBeforeWriting() {
+        ComputationNode a = new ComputationNode(new double[][]{{1, 2}, {3, 4}});
+        ComputationNode root = op(ComputationNodeType.ADD, a, op(ComputationNodeType.NEGATE, op(ComputationNodeType.TRANSPOSE, a)), a);
+
+        engine.run(root);
+        double[][] result = root.getMatrix();
+        assertArrayEquals(new double[]{1, 1}, result[0], 0.001);
+        assertArrayEquals(new double[]{4, 4}, result[1], 0.001);
+    }
+
+    //dead intermediates are recycled for later results of the same shape, the leaves never are
+    @Test
+    void run_recycledIntermediates_leaveLeavesUntouched() {
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{0, 1}, {1, 0}};
+        double[][] id = {{1, 0}, {0, 1}};
+        //(A*B) * (A*B + I) + (B*A) + -(A) + (A + B)*I - every product has the shape of the leaves,
+        //and the negation and the inner sum write their results where a leaf was read
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.MULTIPLY,
+                        op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b)),
+                        op(ComputationNodeType.ADD,
+                                op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b)),
+                                new ComputationNode(id))),
+                op(ComputationNodeType.MULTIPLY, new ComputationNode(b), new ComputationNode(a)),
+                op(ComputationNodeType.NEGATE, new ComputationNode(a)),
+                op(ComputationNodeType.MULTIPLY,
+                        op(ComputationNodeType.ADD, new ComputationNode(a), new ComputationNode(b)),
+                        new ComputationNode(id)));
+
+        engine.run(root);
+        double[][] result = root.getMatrix();
+        //A*B = [[2,1],[4,3]], (A*B)(A*B + I) = [[2,1],[4,3]] * [[3,1],[4,4]] = [[10,6],[24,16]], B*A = [[3,4],[1,2]],
+        //A + B = [[1,3],[4,4]]
+        assertArrayEquals(new double[]{13, 11}, result[0], 0.001);
+        assertArrayEquals(new double[]{26, 18}, result[1], 0.001);
+        assertArrayEquals(new double[]{1, 2}, a[0], 0.001);
+        assertArrayEquals(new double[]{3, 4}, a[1], 0.001);
+        assertArrayEquals(new double[]{0, 1}, b[0], 0.001);
+        assertArrayEquals(new double[]{1, 0}, b[1], 0.001);
+        assertArrayEquals(new double[]{1, 0}, id[0], 0.001);
+        assertArrayEquals(new double[]{0, 1}, id[1], 0.001);
+    }
+
+    @Test
+    void run_elementwiseOpsOnLeaves_doNotOverwriteCallerArrays() {
+        double[][] a = {{1, 2}, {3, 4}};
+        double[][] b = {{5, 6}, {7, 8}};
+
+        ComputationNode sum = op(ComputationNodeType.ADD, new ComputationNode(a), new ComputationNode(b));
+        engine.run(sum);
+        assertArrayEquals(new double[]{6, 8}, sum.getMatrix()[0], 0.001);
+        assertArrayEquals(new double[]{1, 2}, a[0], 0.001);
+        assertArrayEquals(new double[]{5, 6}, b[0], 0.001);
+
+        ComputationNode neg = op(ComputationNodeType.NEGATE, new ComputationNode(a));
+        engine.run(neg);
+        assertArrayEquals(new double[]{-3, -4}, neg.getMatrix()[1], 0.001);
+        assertArrayEquals(new double[]{3, 4}, a[1], 0.001);
+
+        //a sparse operand is scattered into the dense one, which is the caller's here
+        double[][] sparse = {{0, 0}, {0, 1}};
+        ComputationNode scattered = op(ComputationNodeType.ADD, new ComputationNode(sparse), new ComputationNode(b));
+        engine.run(scattered);
+        assertArrayEquals(new double[]{7, 9}, scattered.getMatrix()[1], 0.001);
+        assertArrayEquals(new double[]{7, 8}, b[1], 0.001);
+    }
+
+    @Test
+    void run_twoLeavesOverOneArray_readTheOriginalValues() {
+        double[][] a = {{1, 2}, {3, 4}};
+        //-(A) + (A*A) + -(A): both NEGATE leaves and the product read the same array
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.NEGATE, new ComputationNode(a)),
+                op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(a)),
+                op(ComputationNodeType.NEGATE, new ComputationNode(a)));
+
+        for (int i = 0; i < 20; i++) {
+            engine.run(root);
+            double[][] result = root.getMatrix();
+            //A*A = [[7,10],[15,22]]
+            assertArrayEquals(new double[]{5, 6}, result[0], 0.001);
+            assertArrayEquals(new double[]{9, 14}, result[1], 0.001);
+            assertArrayEquals(new double[]{1, 2}, a[0], 0.001);
+            assertArrayEquals(new double[]{3, 4}, a[1], 0.001);
+            root = op(ComputationNodeType.ADD,
+                    op(ComputationNodeType.NEGATE, new ComputationNode(a)),
+                    op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(a)),
+                    op(ComputationNodeType.NEGATE, new ComputationNode(a)));
+        }
+    }
+
+    //a consumer that negates a shared intermediate writes in place only once no other consumer reads it
+    @Test
+    void run_sharedIntermediate_isNotOverwrittenWhileAnotherConsumerReadsIt() {
+        int n = 96;
+        java.util.Random rnd = new java.util.Random(5);
+        double[][] a = new double[n][n];
+        double[][] id = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            id[i][i] = 1;
+            for (int j = 0; j < n; j++) a[i][j] = rnd.nextInt(5) - 2;
+        }
+        double[][] s = new double[n][n];
+        for (int i = 0; i < n; i++) for (int p = 0; p < n; p++) for (int j = 0; j < n; j++) s[i][j] += a[i][p] * a[p][j];
+
+        for (int run = 0; run < 10; run++) {
+            //(-(S)) * (S*I) with S = A*A, both consumers of S start together
+            ComputationNode shared = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(a));
+            ComputationNode root = op(ComputationNodeType.MULTIPLY,
+                    op(ComputationNodeType.NEGATE, shared),
+                    op(ComputationNodeType.MULTIPLY, shared, new ComputationNode(id)));
+            engine.run(root);
+            double[][] result = root.getMatrix();
+            for (int i = 0; i < n; i += 17) {
+                for (int j = 0; j < n; j += 13) {
+                    double expected = 0;
+                    for (int p = 0; p < n; p++) expected -= s[i][p] * s[p][j];
+                    assertEquals(expected, result[i][j], 1e-6);
+                }
+            }
+        }
+    }
+
+    //T(S) * S reads the shared product through both operands, in place
+    @Test
+    void run_transposeOfSharedOperandTimesOperand_matchesNaiveProduct() {
+        double[][] a = {{1, 2}, {3, 4}, {5, 6}};
+        double[][] b = {{1, 0, 2}, {0, 1, 1}};
+        ComputationNode shared = op(ComputationNodeType.MULTIPLY, new ComputationNode(a), new ComputationNode(b));
+        ComputationNode root = op(ComputationNodeType.ADD,
+                op(ComputationNodeType.MULTIPLY, op(ComputationNodeType.TRANSPOSE, shared), shared),
+                op(ComputationNodeType.NEGATE, shared));
+
+        engine.run(root);
+
+        //S = A*B = [[1,2,4],[3,4,10],[5,6,16]], T(S)*S - S
+        double[][] sMat = {{1, 2, 4}, {3, 4, 10}, {5, 6, 16}};
+        double[][] result = root.getMatrix();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                double expected = -sMat[i][j];
+                for (int p = 0; p < 3; p++) expected += sMat[p][i] * sMat[p][j];
+                assertEquals(expected, result[i][j], 0.001);
+            }
+        }
+    }
+
+    private static double[][] copy(double[][] m) {
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++) {
+            c[i] = m[i].clone();
+        }
+        return c;
+    }
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+}
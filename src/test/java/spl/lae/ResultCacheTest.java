@@ -0,0 +1,148 @@
+package spl.lae;
+import parser.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ResultCacheTest {
+
+    private static ComputationNode op(ComputationNodeType type, ComputationNode... children) {
+        return new ComputationNode(type, new ArrayList<>(List.of(children)));
+    }
+
+    private static ComputationNode product() {
+        return op(ComputationNodeType.MULTIPLY,
+                new ComputationNode(new double[][]{{1, 2}, {3, 4}}),
+                new ComputationNode(new double[][]{{0, 1}, {1, 0}}));
+    }
+
+    @Test
+    void keysOf_sameContentInOtherNodes_givesSameKey() {
+        ComputationNode a = product();
+        ComputationNode b = product();
+        assertEquals(ResultCache.keysOf(a).get(a), ResultCache.keysOf(b).get(b));
+    }
+
+    @Test
+    void keysOf_differentValueOrOperator_givesDifferentKeys() {
+        ComputationNode a = product();
+        ComputationNode sum = op(ComputationNodeType.ADD,
+                new ComputationNode(new double[][]{{1, 2}, {3, 4}}),
+                new ComputationNode(new double[][]{{0, 1}, {1, 0}}));
+        ComputationNode other = op(ComputationNodeType.MULTIPLY,
+                new ComputationNode(new double[][]{{1, 2}, {3, 5}}),
+                new ComputationNode(new double[][]{{0, 1}, {1, 0}}));
+        String key = ResultCache.keysOf(a).get(a);
+        assertNotEquals(key, ResultCache.keysOf(sum).get(sum));
+        assertNotEquals(key, ResultCache.keysOf(other).get(other));
+    }
+
+    @Test
+    void load_afterStore_resolvesToPrivateCopy() {
+        ResultCache cache = new ResultCache(1 << 20);
+        double[][] value = {{1, 2}, {3, 4}};
+        cache.store("k", new ComputationNode(value));
+        value[0][0] = 99;
+
+        ComputationNode target = product();
+        assertTrue(cache.load("k", target));
+        assertEquals(ComputationNodeType.MATRIX, target.getNodeType());
+        assertArrayEquals(new double[]{1, 2}, target.getMatrix()[0]);
+        assertFalse(cache.load("missing", product()));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void store_overCapacity_evictsLeastRecentlyUsed() {
+        long entry = 2 * 2 * Double.BYTES;
+        ResultCache cache = new ResultCache(2 * entry);
+        cache.store("a", new ComputationNode(new double[2][2]));
+        cache.store("b", new ComputationNode(new double[2][2]));
+        assertTrue(cache.load("a", product()));
+        cache.store("c", new ComputationNode(new double[2][2]));
+
+        assertTrue(cache.load("a", product()));
+        assertFalse(cache.load("b", product()));
+        assertTrue(cache.load("c", product()));
+        assertEquals(2 * entry, cache.getBytes());
+    }
+
+    @Test
+    void load_fromDirectory_survivesNewCacheInstance(@TempDir Path dir) {
+        ResultCache first = new ResultCache(1 << 20, dir);
+        ComputationNode transposed = new ComputationNode(new double[][]{{1, 2, 3}});
+        transposed.resolve(new double[][]{{1, 2, 3}}, true);
+        first.store("k", transposed);
+
+        ResultCache second = new ResultCache(1 << 20, dir);
+        ComputationNode target = product();
+        assertTrue(second.load("k", target));
+        assertTrue(target.isTransposed());
+        assertArrayEquals(new double[]{1}, target.getMatrix()[0]);
+        assertArrayEquals(new double[]{3}, target.getMatrix()[2]);
+    }
+
+    //a header that does not match the file length is a miss, it is never used to size an allocation
+    @Test
+    void load_fileWithBadHeader_isMiss(@TempDir Path dir) throws Exception {
+        java.nio.ByteBuffer huge = java.nio.ByteBuffer.allocate(1 + 2 * Integer.BYTES + Double.BYTES);
+        huge.put((byte) 0).putInt(Integer.MAX_VALUE).putInt(Integer.MAX_VALUE).putDouble(1);
+        java.nio.file.Files.write(dir.resolve("huge.bin"), huge.array());
+        java.nio.ByteBuffer noCols = java.nio.ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+        noCols.put((byte) 0).putInt(Integer.MAX_VALUE).putInt(0);
+        java.nio.file.Files.write(dir.resolve("nocols.bin"), noCols.array());
+        java.nio.file.Files.write(dir.resolve("short.bin"), new byte[]{0, 0});
+
+        ResultCache cache = new ResultCache(1 << 20, dir);
+        ComputationNode target = product();
+        assertFalse(cache.load("huge", target));
+        assertFalse(cache.load("nocols", target));
+        assertFalse(cache.load("short", target));
+        assertEquals(3, cache.getMisses());
+        assertEquals(ComputationNodeType.MULTIPLY, target.getNodeType());
+    }
+
+    //a second run over the same matrices takes the product from the cache instead of the pool
+    @Test
+    void run_withCache_secondRunHitsAndMatches() {
+        ResultCache cache = new ResultCache(1 << 20);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2, scheduling.ExecutionMode.HANDOFF, cache)) {
+            ComputationNode first = op(ComputationNodeType.NEGATE, product());
+            engine.run(first);
+            assertEquals(0, cache.getHits());
+
+            ComputationNode second = op(ComputationNodeType.NEGATE, product());
+            Map<ComputationNode, String> keys = ResultCache.keysOf(second);
+            engine.run(second);
+            assertTrue(cache.getHits() > 0);
+            assertNotNull(keys.get(second));
+            assertArrayEquals(first.getMatrix()[0], second.getMatrix()[0]);
+            assertArrayEquals(new double[]{-2, -1}, second.getMatrix()[0]);
+            assertArrayEquals(new double[]{-4, -3}, second.getMatrix()[1]);
+        }
+    }
+
+    //a cached product is handed to the run as its own, and written in place without touching the cache
+    @Test
+    void run_loadedResultWrittenInPlace_leavesCacheEntryIntact() {
+        ResultCache cache = new ResultCache(1 << 20);
+        try (LinearAlgebraEngine engine = new LinearAlgebraEngine(2, scheduling.ExecutionMode.HANDOFF, cache)) {
+            engine.run(op(ComputationNodeType.NEGATE, product()));
+            for (double shift : new double[]{1, 2}) {
+                ComputationNode sum = op(ComputationNodeType.ADD, product(),
+                        new ComputationNode(new double[][]{{shift, 0}, {0, shift}}));
+                engine.run(sum);
+                //A*B = [[2,1],[4,3]]
+                assertArrayEquals(new double[]{2 + shift, 1}, sum.getMatrix()[0], 0.001);
+                assertArrayEquals(new double[]{4, 3 + shift}, sum.getMatrix()[1], 0.001);
+            }
+            assertEquals(2, cache.getHits());
+        }
+    }
+}